@@ -0,0 +1,87 @@
+package org.matsim.analysis;
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.core.population.PopulationUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link KelheimMainModeIdentifier#identifyMainMode} on the trip element lists that are typical for the Kelheim scenario.
+ * <p>
+ * Run with {@code java -jar target/benchmarks.jar MainModeIdentifierBenchmark -prof gc}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MainModeIdentifierBenchmark {
+
+	@Param({"car", "ptWithDrtAccess", "fallbackWalk"})
+	private String trip;
+
+	/**
+	 * Number of additional drt service variants in the mode hierarchy.
+	 */
+	@Param({"0", "20"})
+	private int drtVariants;
+
+	private KelheimMainModeIdentifier identifier;
+	private List<PlanElement> tripElements;
+
+	@Setup
+	public void setup() {
+		KelheimMainModeIdentifierConfigGroup configGroup = new KelheimMainModeIdentifierConfigGroup();
+		for (int i = 0; i < drtVariants; i++) {
+			String variant = "drtVariant" + i;
+			configGroup.getModeHierarchy().add(configGroup.getModeHierarchy().indexOf(TransportMode.pt), variant);
+			configGroup.getDrtModes().add(variant);
+		}
+		identifier = new KelheimMainModeIdentifier(configGroup);
+		tripElements = switch (trip) {
+			case "car" -> createTrip(TransportMode.walk, TransportMode.car, TransportMode.walk);
+			case "ptWithDrtAccess" -> createTrip(TransportMode.walk, TransportMode.drt, TransportMode.walk, TransportMode.pt,
+				TransportMode.walk, TransportMode.pt, TransportMode.walk);
+			case "fallbackWalk" -> createTrip("av_fallback");
+			default -> throw new IllegalArgumentException("unknown trip " + trip);
+		};
+	}
+
+	@Benchmark
+	public String identifyMainMode() {
+		return identifier.identifyMainMode(tripElements);
+	}
+
+	/**
+	 * Creates the legs with interaction activities in between, as they are found in a plan.
+	 */
+	private static List<PlanElement> createTrip(String... modes) {
+		List<PlanElement> elements = new ArrayList<>();
+		for (int i = 0; i < modes.length; i++) {
+			if (i > 0) {
+				String interactionMode = modes[i].equals(TransportMode.walk) ? modes[i - 1] : modes[i];
+				elements.add(PopulationUtils.createStageActivityFromCoordLinkIdAndModePrefix(new Coord(0, 0), Id.createLinkId("link"),
+					interactionMode));
+			}
+			elements.add(PopulationUtils.createLeg(modes[i]));
+		}
+		return elements;
+	}
+}
@@ -0,0 +1,77 @@
+package org.matsim.rebalancing;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the {@link MinCostAssignment} of the optimal waiting point assignment: vehicles and waiting points at random locations in an
+ * area of the size of the Kelheim drt service area, with euclidean distances as costs. The spare capacity of the waiting points adds up
+ * to twice the number of vehicles.
+ * <p>
+ * Run with {@code java -jar target/benchmarks.jar MinCostAssignmentBenchmark -prof gc}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MinCostAssignmentBenchmark {
+
+	private static final double AREA_SIZE = 15000;
+
+	@Param({"100", "1000"})
+	private int vehicles;
+
+	@Param({"100", "1000", "3000"})
+	private int waitingPoints;
+
+	private double[] costs;
+	private int[] capacities;
+	private MinCostAssignment assignment;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		SplittableRandom rnd = new SplittableRandom(4711);
+		double[] vehicleCoords = randomCoords(rnd, vehicles);
+		double[] pointCoords = randomCoords(rnd, waitingPoints);
+
+		costs = new double[vehicles * waitingPoints];
+		for (int vehicle = 0; vehicle < vehicles; vehicle++) {
+			for (int point = 0; point < waitingPoints; point++) {
+				costs[vehicle * waitingPoints + point] = Math.hypot(vehicleCoords[2 * vehicle] - pointCoords[2 * point],
+					vehicleCoords[2 * vehicle + 1] - pointCoords[2 * point + 1]);
+			}
+		}
+		capacities = new int[waitingPoints];
+		Arrays.fill(capacities, Math.max(1, 2 * vehicles / waitingPoints));
+		assignment = new MinCostAssignment();
+	}
+
+	@Benchmark
+	public int[] solve() {
+		return assignment.solve(costs, vehicles, waitingPoints, capacities);
+	}
+
+	private static double[] randomCoords(SplittableRandom rnd, int n) {
+		double[] coords = new double[2 * n];
+		for (int i = 0; i < coords.length; i++) {
+			coords[i] = rnd.nextDouble(AREA_SIZE);
+		}
+		return coords;
+	}
+}
@@ -0,0 +1,190 @@
+package org.matsim.rebalancing;
+
+import com.google.common.collect.ImmutableMap;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.contrib.drt.optimizer.rebalancing.RebalancingParams;
+import org.matsim.contrib.drt.optimizer.rebalancing.RebalancingStrategy;
+import org.matsim.contrib.drt.schedule.DrtStayTask;
+import org.matsim.contrib.dvrp.fleet.DvrpVehicle;
+import org.matsim.contrib.dvrp.fleet.DvrpVehicleImpl;
+import org.matsim.contrib.dvrp.fleet.Fleet;
+import org.matsim.contrib.dvrp.fleet.ImmutableDvrpVehicleSpecification;
+import org.matsim.contrib.dvrp.schedule.Schedule;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.trafficmonitoring.FreeSpeedTravelTime;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link WaitingPointsBasedRebalancingStrategy#calcRelocations} on a synthetic fleet and a grid network of the size of the Kelheim
+ * drt service area. Idle vehicles stay at random links, the other vehicles are busy. The waiting points are the start links of the fleet.
+ * The schedules are not changed by the relocations, so every call relocates the idle vehicles that are not at a waiting point again.
+ * <p>
+ * Before each call, either all vehicles are marked as changed ({@code full}, the occupancy is derived from all schedules again) or a share
+ * of {@value #CHANGED_SHARE} of the fleet, as by the task events of one rebalancing period ({@code incremental}).
+ * <p>
+ * Run with {@code java -jar target/benchmarks.jar WaitingPointRebalancingBenchmark -prof gc}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WaitingPointRebalancingBenchmark {
+
+	private static final int GRID_SIZE = 60;
+	private static final double GRID_SPACING = 250;
+	private static final double SERVICE_END_TIME = 30 * 3600;
+	private static final double TIME = 8 * 3600;
+	private static final double CHANGED_SHARE = 0.05;
+
+	@Param({"50", "500", "5000"})
+	private int fleetSize;
+
+	@Param({"0.1", "0.5"})
+	private double idleRatio;
+
+	@Param({"20", "100", "1000"})
+	private int waitingPoints;
+
+	@Param({"euclidean", "freeSpeedTravelTime"})
+	private WaitingPointBasedRebalancingStrategyParams.WaitingPointDistance distance;
+
+	@Param({"greedy", "optimal"})
+	private WaitingPointBasedRebalancingStrategyParams.WaitingPointAssignment assignment;
+
+	@Param({"incremental", "full"})
+	private Update update;
+
+	private Network network;
+	private Fleet fleet;
+	private List<DvrpVehicle> idleVehicles;
+	private List<Id<DvrpVehicle>> changedVehicles;
+	private int nextChangedVehicle;
+	private WaitingPointsBasedRebalancingStrategy strategy;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		SplittableRandom rnd = new SplittableRandom(4711);
+		network = createGridNetwork();
+		List<Link> links = new ArrayList<>(network.getLinks().values());
+
+		List<Link> waitingPointLinks = new ArrayList<>();
+		for (int i = 0; i < waitingPoints; i++) {
+			waitingPointLinks.add(links.get(rnd.nextInt(links.size())));
+		}
+
+		ImmutableMap.Builder<Id<DvrpVehicle>, DvrpVehicle> vehicles = ImmutableMap.builder();
+		idleVehicles = new ArrayList<>();
+		for (int i = 0; i < fleetSize; i++) {
+			// the fleet starts at the waiting points, i.e. their capacities add up to the fleet size
+			Link startLink = waitingPointLinks.get(i % waitingPointLinks.size());
+			DvrpVehicle vehicle = new DvrpVehicleImpl(ImmutableDvrpVehicleSpecification.newBuilder()
+				.id(Id.create("av_" + i, DvrpVehicle.class))
+				.startLinkId(startLink.getId())
+				.capacity(4)
+				.serviceBeginTime(0)
+				.serviceEndTime(SERVICE_END_TIME)
+				.build(), startLink);
+
+			Link currentLink = links.get(rnd.nextInt(links.size()));
+			Schedule schedule = vehicle.getSchedule();
+			if (rnd.nextDouble() < idleRatio) {
+				schedule.addTask(new DrtStayTask(0, SERVICE_END_TIME, currentLink));
+				idleVehicles.add(vehicle);
+			} else {
+				// busy: the current task is followed by further tasks
+				schedule.addTask(new DrtStayTask(0, TIME + 600, currentLink));
+				schedule.addTask(new DrtStayTask(TIME + 600, TIME + 1200, currentLink));
+				schedule.addTask(new DrtStayTask(TIME + 1200, SERVICE_END_TIME, currentLink));
+			}
+			schedule.nextTask();
+			vehicles.put(vehicle.getId(), vehicle);
+		}
+		ImmutableMap<Id<DvrpVehicle>, DvrpVehicle> vehicleMap = vehicles.build();
+		fleet = () -> vehicleMap;
+
+		// the vehicles are marked as changed in random order
+		changedVehicles = new ArrayList<>(vehicleMap.keySet());
+		Collections.shuffle(changedVehicles, new Random(rnd.nextLong()));
+	}
+
+	/**
+	 * The strategy is created for every iteration, so that the metrics it records do not pile up over the whole trial.
+	 */
+	@Setup(Level.Iteration)
+	public void createStrategy() throws IOException {
+		WaitingPointBasedRebalancingStrategyParams params = new WaitingPointBasedRebalancingStrategyParams();
+		params.setWaitingPointDistance(distance);
+		params.setWaitingPointAssignment(assignment);
+		strategy = new WaitingPointsBasedRebalancingStrategy("av", network, params, new RebalancingParams(), fleet, new FreeSpeedTravelTime(),
+			null, new WaitingPointRebalancingMetrics("av", null));
+	}
+
+	@Benchmark
+	public List<RebalancingStrategy.Relocation> calcRelocations() {
+		if (update == Update.full) {
+			strategy.markAllVehiclesChanged();
+		} else {
+			for (int i = (int) Math.ceil(CHANGED_SHARE * fleetSize); i > 0; i--) {
+				strategy.markChanged(changedVehicles.get(nextChangedVehicle));
+				nextChangedVehicle = (nextChangedVehicle + 1) % changedVehicles.size();
+			}
+		}
+		return strategy.calcRelocations(idleVehicles.stream(), TIME);
+	}
+
+	private static Network createGridNetwork() {
+		Network network = NetworkUtils.createNetwork();
+		Node[][] nodes = new Node[GRID_SIZE][GRID_SIZE];
+		for (int x = 0; x < GRID_SIZE; x++) {
+			for (int y = 0; y < GRID_SIZE; y++) {
+				nodes[x][y] = NetworkUtils.createAndAddNode(network, Id.createNodeId(x + "_" + y), new Coord(x * GRID_SPACING, y * GRID_SPACING));
+			}
+		}
+		for (int x = 0; x < GRID_SIZE; x++) {
+			for (int y = 0; y < GRID_SIZE; y++) {
+				if (x + 1 < GRID_SIZE) {
+					addLinks(network, nodes[x][y], nodes[x + 1][y]);
+				}
+				if (y + 1 < GRID_SIZE) {
+					addLinks(network, nodes[x][y], nodes[x][y + 1]);
+				}
+			}
+		}
+		return network;
+	}
+
+	/**
+	 * Vehicles whose schedule is inspected again before each call.
+	 */
+	public enum Update {incremental, full}
+
+	private static void addLinks(Network network, Node a, Node b) {
+		NetworkUtils.createAndAddLink(network, Id.createLinkId(a.getId() + "-" + b.getId()), a, b, GRID_SPACING, 13.9, 1000, 1);
+		NetworkUtils.createAndAddLink(network, Id.createLinkId(b.getId() + "-" + a.getId()), b, a, GRID_SPACING, 13.9, 1000, 1);
+	}
+}
@@ -1,105 +1,124 @@
 package org.matsim.analysis;
 
 import com.google.inject.Inject;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntMaps;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.matsim.api.core.v01.TransportMode;
 import org.matsim.api.core.v01.population.Leg;
 import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.router.AnalysisMainModeIdentifier;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Iterator;
 import java.util.List;
 
 /**
- * Hierarchical main mode identifier.
+ * Hierarchical main mode identifier, configured by the {@link KelheimMainModeIdentifierConfigGroup}.
+ * The rank of every mode in the hierarchy (including aliases, e.g. transit_walk and the drt fallback modes, which are ranked as walk) is
+ * precomputed, so that identifying the main mode of a trip is a single pass over its legs without allocations.
  */
 public final class KelheimMainModeIdentifier implements AnalysisMainModeIdentifier {
-	private final List<String> modeHierarchy = new ArrayList();
-	private final List<String> drtModes = Arrays.asList("drt", "kexi", "av", "drt_teleportation", "avDP", "avAS");
 	public static final String ANALYSIS_MAIN_MODE_PT_WITH_DRT_USED_FOR_ACCESS_OR_EGRESS = "pt_w_drt_used";
 	private static final Logger log = LogManager.getLogger(KelheimMainModeIdentifier.class);
+	private static final int UNKNOWN = -1;
 
-	@Inject
+	/**
+	 * Modes by rank, i.e. the last one is the main mode.
+	 */
+	private final String[] modeHierarchy;
+	private final Object2IntMap<String> modeRanks;
+	private final boolean[] isDrtRank;
+	private final int walkRank;
+	private final int ptRank;
+
+	/**
+	 * Creates the identifier with the default mode hierarchy.
+	 */
 	public KelheimMainModeIdentifier() {
-		this.modeHierarchy.add("transit_walk");
-		this.modeHierarchy.add("walk");
-		this.modeHierarchy.add("bike");
-		this.modeHierarchy.add("bicycle");
-		this.modeHierarchy.add("ride");
-		this.modeHierarchy.add("car");
-		Iterator var1 = this.drtModes.iterator();
+		this(new KelheimMainModeIdentifierConfigGroup());
+	}
+
+	@Inject
+	public KelheimMainModeIdentifier(Config config) {
+		this(ConfigUtils.addOrGetModule(config, KelheimMainModeIdentifierConfigGroup.class));
+	}
+
+	public KelheimMainModeIdentifier(KelheimMainModeIdentifierConfigGroup configGroup) {
+		this.modeHierarchy = configGroup.getModeHierarchy().toArray(new String[0]);
 
-		while (var1.hasNext()) {
-			String drtMode = (String) var1.next();
-			this.modeHierarchy.add(drtMode);
+		Object2IntOpenHashMap<String> ranks = new Object2IntOpenHashMap<>();
+		ranks.defaultReturnValue(UNKNOWN);
+		for (int rank = 0; rank < modeHierarchy.length; rank++) {
+			ranks.put(modeHierarchy[rank], rank);
+		}
+		this.walkRank = ranks.getInt(TransportMode.walk);
+		this.ptRank = ranks.getInt(TransportMode.pt);
+		if (walkRank == UNKNOWN || ptRank == UNKNOWN) {
+			throw new IllegalArgumentException("The mode hierarchy has to contain walk and pt: " + configGroup.getModeHierarchy());
+		}
+
+		this.isDrtRank = new boolean[modeHierarchy.length];
+		for (String drtMode : configGroup.getDrtModes()) {
+			int rank = ranks.getInt(drtMode);
+			if (rank == UNKNOWN) {
+				throw new IllegalArgumentException("drt mode " + drtMode + " is not part of the mode hierarchy: " + configGroup.getModeHierarchy());
+			}
+			isDrtRank[rank] = true;
 		}
 
-		this.modeHierarchy.add("pt");
-		this.modeHierarchy.add("freight");
+		// aliases
+		ranks.put(TransportMode.transit_walk, walkRank);
+		for (String drtMode : configGroup.getDrtModes()) {
+			// transit_walk / drt_walk / ... to be replaced by _fallback soon
+			ranks.put(drtMode + "_fallback", walkRank);
+		}
+		ranks.trim();
+		this.modeRanks = Object2IntMaps.unmodifiable(ranks);
 	}
 
 	@Override
 	public String identifyMainMode(List<? extends PlanElement> planElements) {
-		int mainModeIndex = -1;
-		List<String> modesFound = new ArrayList<>();
-		for (PlanElement pe : planElements) {
-			int index;
-			String mode;
-			if (pe instanceof Leg) {
-				Leg leg = (Leg) pe;
-				mode = leg.getMode();
-			} else {
+		int mainModeRank = UNKNOWN;
+		boolean drtFound = false;
+		boolean otherModeFound = false;
+		for (int i = 0, n = planElements.size(); i < n; i++) {
+			if (!(planElements.get(i) instanceof Leg leg)) {
 				continue;
 			}
+			String mode = leg.getMode();
 			if (mode.equals(TransportMode.non_network_walk)) {
 				// skip, this is only a helper mode for access, egress and pt transfers
 				continue;
 			}
-			if (mode.equals(TransportMode.transit_walk)) {
-				mode = TransportMode.walk;
-			} else {
-				for (String drtMode : drtModes) {
-					// transit_walk / drt_walk / ... to be replaced by _fallback soon
-					if (mode.equals(drtMode + "_fallback")) {
-						mode = TransportMode.walk;
-					}
-				}
-			}
-			modesFound.add(mode);
-			index = modeHierarchy.indexOf(mode);
-			if (index < 0) {
+			int rank = modeRanks.getInt(mode);
+			if (rank == UNKNOWN) {
 				throw new RuntimeException("unknown mode=" + mode);
 			}
-			if (index > mainModeIndex) {
-				mainModeIndex = index;
+			if (rank > mainModeRank) {
+				mainModeRank = rank;
+			}
+			// needed to differentiate pt monomodal/intermodal
+			if (isDrtRank[rank]) {
+				drtFound = true;
+			} else if (rank != walkRank && rank != ptRank) {
+				otherModeFound = true;
 			}
 		}
-		if (mainModeIndex == -1) {
+		if (mainModeRank == UNKNOWN) {
 			throw new RuntimeException("no main mode found for trip " + planElements);
 		}
 
-		String mainMode = modeHierarchy.get(mainModeIndex);
-		// differentiate pt monomodal/intermodal
-		if (mainMode.equals(TransportMode.pt)) {
-			boolean isDrtPt = false;
-			for (String modeFound : modesFound) {
-				if (modeFound.equals(TransportMode.pt)) {
-					continue;
-				} else if (modeFound.equals(TransportMode.walk)) {
-					continue;
-				} else if (drtModes.contains(modeFound)) {
-					isDrtPt = true;
-				} else {
-					log.error("unknown intermodal pt trip: " + planElements);
-					throw new RuntimeException("unknown intermodal pt trip");
-				}
+		if (mainModeRank == ptRank) {
+			if (otherModeFound) {
+				log.error("unknown intermodal pt trip: " + planElements);
+				throw new RuntimeException("unknown intermodal pt trip");
 			}
-			return isDrtPt ? ANALYSIS_MAIN_MODE_PT_WITH_DRT_USED_FOR_ACCESS_OR_EGRESS : TransportMode.pt;
+			return drtFound ? ANALYSIS_MAIN_MODE_PT_WITH_DRT_USED_FOR_ACCESS_OR_EGRESS : TransportMode.pt;
 		} else {
-			return mainMode;
+			return modeHierarchy[mainModeRank];
 		}
 	}
 }
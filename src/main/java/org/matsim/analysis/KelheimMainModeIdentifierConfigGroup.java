@@ -0,0 +1,64 @@
+package org.matsim.analysis;
+
+import jakarta.validation.constraints.NotEmpty;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ReflectiveConfigGroup;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Config group for the {@link KelheimMainModeIdentifier}: the mode hierarchy and the drt modes (i.e. the modes which make a pt trip a
+ * {@link KelheimMainModeIdentifier#ANALYSIS_MAIN_MODE_PT_WITH_DRT_USED_FOR_ACCESS_OR_EGRESS} trip and whose fallback modes count as walk).
+ */
+public final class KelheimMainModeIdentifierConfigGroup extends ReflectiveConfigGroup {
+	public static final String GROUP_NAME = "kelheimMainModeIdentifier";
+
+	@Parameter
+	@Comment("Modes in ascending order of priority, i.e. the mode of a trip that comes last in this list is its main mode. Has to contain walk and pt.")
+	@NotEmpty
+	private List<String> modeHierarchy = new ArrayList<>(List.of("transit_walk", "walk", "bike", "bicycle", "ride", "car",
+		"drt", "kexi", "av", "drt_teleportation", "avDP", "avAS", "pt", "freight"));
+
+	@Parameter
+	@Comment("drt modes of the mode hierarchy. Their fallback modes (<mode>_fallback) are treated as walk.")
+	private Set<String> drtModes = new LinkedHashSet<>(List.of("drt", "kexi", "av", "drt_teleportation", "avDP", "avAS"));
+
+	public KelheimMainModeIdentifierConfigGroup() {
+		super(GROUP_NAME);
+	}
+
+	@Override
+	protected void checkConsistency(Config config) {
+		super.checkConsistency(config);
+		if (new HashSet<>(modeHierarchy).size() != modeHierarchy.size()) {
+			throw new IllegalArgumentException("The mode hierarchy contains duplicate modes: " + modeHierarchy);
+		}
+		if (!modeHierarchy.contains(TransportMode.walk) || !modeHierarchy.contains(TransportMode.pt)) {
+			throw new IllegalArgumentException("The mode hierarchy has to contain walk and pt: " + modeHierarchy);
+		}
+		if (!modeHierarchy.containsAll(drtModes)) {
+			throw new IllegalArgumentException("All drt modes " + drtModes + " have to be part of the mode hierarchy: " + modeHierarchy);
+		}
+	}
+
+	public List<String> getModeHierarchy() {
+		return modeHierarchy;
+	}
+
+	public void setModeHierarchy(List<String> modeHierarchy) {
+		this.modeHierarchy = modeHierarchy;
+	}
+
+	public Set<String> getDrtModes() {
+		return drtModes;
+	}
+
+	public void setDrtModes(Set<String> drtModes) {
+		this.drtModes = drtModes;
+	}
+}
@@ -0,0 +1,311 @@
+package org.matsim.analysis;
+
+import com.google.inject.Inject;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.core.config.Config;
+import org.matsim.core.controler.OutputDirectoryHierarchy;
+import org.matsim.core.controler.events.AfterMobsimEvent;
+import org.matsim.core.controler.events.BeforeMobsimEvent;
+import org.matsim.core.controler.events.IterationEndsEvent;
+import org.matsim.core.controler.events.IterationStartsEvent;
+import org.matsim.core.controler.events.ReplanningEvent;
+import org.matsim.core.controler.events.ScoringEvent;
+import org.matsim.core.controler.events.ShutdownEvent;
+import org.matsim.core.controler.events.StartupEvent;
+import org.matsim.core.controler.listener.AfterMobsimListener;
+import org.matsim.core.controler.listener.BeforeMobsimListener;
+import org.matsim.core.controler.listener.IterationEndsListener;
+import org.matsim.core.controler.listener.IterationStartsListener;
+import org.matsim.core.controler.listener.ReplanningListener;
+import org.matsim.core.controler.listener.ScoringListener;
+import org.matsim.core.controler.listener.ShutdownListener;
+import org.matsim.core.controler.listener.StartupListener;
+import org.matsim.core.events.handler.BasicEventHandler;
+import org.matsim.core.mobsim.framework.events.MobsimBeforeCleanupEvent;
+import org.matsim.core.mobsim.framework.events.MobsimInitializedEvent;
+import org.matsim.core.mobsim.framework.listeners.MobsimBeforeCleanupListener;
+import org.matsim.core.mobsim.framework.listeners.MobsimInitializedListener;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records where the time of every iteration goes and writes it to {@code performance.csv} in the output directory, which is shown by the
+ * {@link org.matsim.dashboard.PerformanceDashboard}. The iteration is split into phases at the controler and mobsim events:
+ * <ul>
+ *     <li>iteration_start: iteration starts listeners, in the first iteration also the initial routing of all plans</li>
+ *     <li>replanning: the replanning strategies</li>
+ *     <li>prepare_mobsim: routing of the new plans, before mobsim listeners and setting up the qsim</li>
+ *     <li>mobsim: the qsim itself, the events per second refer to this phase</li>
+ *     <li>after_mobsim: cleaning up the qsim, finishing the events processing and after mobsim listeners</li>
+ *     <li>scoring: the scoring listeners</li>
+ *     <li>analysis: iteration ends listeners, i.e. the analysis and the output dumps</li>
+ *     <li>shutdown: shutdown listeners including SimWrapper, only for the last iteration</li>
+ * </ul>
+ * This listener has the lowest priority, so each phase ends when all other listeners of the event are done.
+ * Additionally, peak heap (sum of the peaks of the heap memory pools), gc time and the cpu utilization during mobsim and replanning are
+ * written. The utilization is the cpu time of all java threads relative to the configured qsim or global number of threads, so it can exceed 1
+ * if e.g. events are processed in parallel. The cpu time per thread group and phase is written to {@code performance_threads.csv}.
+ */
+public final class PerformanceProfilingListener implements StartupListener, IterationStartsListener, ReplanningListener, BeforeMobsimListener,
+	AfterMobsimListener, ScoringListener, IterationEndsListener, ShutdownListener, MobsimInitializedListener, MobsimBeforeCleanupListener,
+	BasicEventHandler {
+
+	private static final Logger log = LogManager.getLogger(PerformanceProfilingListener.class);
+
+	private static final long SAMPLING_INTERVAL_MILLIS = 500;
+
+	private final OutputDirectoryHierarchy outputDirectoryHierarchy;
+	private final int qsimThreads;
+	private final int globalThreads;
+	private final ThreadCpuSampler sampler = new ThreadCpuSampler(SAMPLING_INTERVAL_MILLIS);
+	private final List<IterationRecord> records = new ArrayList<>();
+
+	private IterationRecord current;
+	private long phaseStart;
+	private long gcTime;
+	private long gcCount;
+	private long events;
+
+	@Inject
+	public PerformanceProfilingListener(Config config, OutputDirectoryHierarchy outputDirectoryHierarchy) {
+		this.outputDirectoryHierarchy = outputDirectoryHierarchy;
+		this.qsimThreads = Math.max(1, config.qsim().getNumberOfThreads());
+		this.globalThreads = Math.max(1, config.global().getNumberOfThreads());
+	}
+
+	@Override
+	public double priority() {
+		// after all other listeners, including SimWrapper on shutdown
+		return -1000;
+	}
+
+	@Override
+	public void notifyStartup(StartupEvent event) {
+		if (sampler.isSupported()) {
+			sampler.start();
+		} else {
+			log.warn("Thread cpu time is not supported by this jvm, the cpu utilization will not be recorded.");
+		}
+		phaseStart = System.nanoTime();
+	}
+
+	@Override
+	public void notifyIterationStarts(IterationStartsEvent event) {
+		current = new IterationRecord(event.getIteration());
+		records.add(current);
+
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			pool.resetPeakUsage();
+		}
+		gcTime = getGcTime();
+		gcCount = getGcCount();
+
+		endPhase(Phase.iteration_start);
+	}
+
+	@Override
+	public void notifyReplanning(ReplanningEvent event) {
+		endPhase(Phase.replanning);
+	}
+
+	@Override
+	public void notifyBeforeMobsim(BeforeMobsimEvent event) {
+		events = 0;
+	}
+
+	@Override
+	public void notifyMobsimInitialized(MobsimInitializedEvent e) {
+		endPhase(Phase.prepare_mobsim);
+	}
+
+	@Override
+	public void handleEvent(Event event) {
+		events++;
+	}
+
+	@Override
+	public void notifyMobsimBeforeCleanup(MobsimBeforeCleanupEvent e) {
+		endPhase(Phase.mobsim);
+	}
+
+	@Override
+	public void notifyAfterMobsim(AfterMobsimEvent event) {
+		endPhase(Phase.after_mobsim);
+		current.events = events;
+	}
+
+	@Override
+	public void notifyScoring(ScoringEvent event) {
+		endPhase(Phase.scoring);
+	}
+
+	@Override
+	public void notifyIterationEnds(IterationEndsEvent event) {
+		endPhase(Phase.analysis);
+
+		long peakHeap = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+				peakHeap += pool.getPeakUsage().getUsed();
+			}
+		}
+		current.peakHeap = peakHeap;
+		current.gcTime = getGcTime() - gcTime;
+		current.gcCount = getGcCount() - gcCount;
+
+		write();
+	}
+
+	@Override
+	public void notifyShutdown(ShutdownEvent event) {
+		if (current != null) {
+			endPhase(Phase.shutdown);
+			write();
+		}
+		sampler.stop();
+	}
+
+	private void endPhase(Phase phase) {
+		long now = System.nanoTime();
+		current.seconds.put(phase, (now - phaseStart) / 1e9);
+		if (sampler.isSupported()) {
+			current.threads.put(phase, sampler.collect());
+		}
+		phaseStart = now;
+	}
+
+	private static long getGcTime() {
+		long time = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			time += Math.max(0, gc.getCollectionTime());
+		}
+		return time;
+	}
+
+	private static long getGcCount() {
+		long count = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			count += Math.max(0, gc.getCollectionCount());
+		}
+		return count;
+	}
+
+	/**
+	 * The files are rewritten after every iteration, so they are complete even if the run is aborted.
+	 */
+	private void write() {
+		try {
+			writeIterations();
+			writeThreads();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private void writeIterations() throws IOException {
+		try (CSVPrinter printer = createPrinter("performance.csv")) {
+			List<Object> header = new ArrayList<>();
+			header.add("iteration");
+			for (Phase phase : Phase.values()) {
+				header.add(phase + "_s");
+			}
+			header.addAll(List.of("total_s", "events", "events_per_s", "peak_heap_mb", "gc_time_s", "gc_count", "mobsim_cpu_utilization",
+				"replanning_cpu_utilization"));
+			printer.printRecord(header);
+
+			for (IterationRecord record : records) {
+				List<Object> row = new ArrayList<>();
+				row.add(record.iteration);
+				double total = 0;
+				for (Phase phase : Phase.values()) {
+					double seconds = record.getSeconds(phase);
+					row.add(seconds);
+					total += seconds;
+				}
+				double mobsimSeconds = record.getSeconds(Phase.mobsim);
+				double replanningSeconds = record.getSeconds(Phase.replanning) + record.getSeconds(Phase.prepare_mobsim);
+				row.add(total);
+				row.add(record.events);
+				row.add(mobsimSeconds > 0 ? record.events / mobsimSeconds : 0);
+				row.add(record.peakHeap / (1024. * 1024.));
+				row.add(record.gcTime / 1000.);
+				row.add(record.gcCount);
+				row.add(utilization(record.getCpuSeconds(Phase.mobsim), mobsimSeconds * qsimThreads));
+				row.add(utilization(record.getCpuSeconds(Phase.replanning) + record.getCpuSeconds(Phase.prepare_mobsim),
+					replanningSeconds * globalThreads));
+				printer.printRecord(row);
+			}
+		}
+	}
+
+	private void writeThreads() throws IOException {
+		try (CSVPrinter printer = createPrinter("performance_threads.csv")) {
+			printer.printRecord("iteration", "phase", "thread_group", "threads", "cpu_s", "utilization");
+			for (IterationRecord record : records) {
+				for (Map.Entry<Phase, Map<String, ThreadCpuSampler.Usage>> phase : record.threads.entrySet()) {
+					double seconds = record.getSeconds(phase.getKey());
+					for (Map.Entry<String, ThreadCpuSampler.Usage> group : phase.getValue().entrySet()) {
+						ThreadCpuSampler.Usage usage = group.getValue();
+						printer.printRecord(record.iteration, phase.getKey(), group.getKey(), usage.getNumberOfThreads(), usage.getCpuSeconds(),
+							utilization(usage.getCpuSeconds(), seconds * usage.getNumberOfThreads()));
+					}
+				}
+			}
+		}
+	}
+
+	private CSVPrinter createPrinter(String fileName) throws IOException {
+		return new CSVPrinter(new FileWriter(outputDirectoryHierarchy.getOutputFilename(fileName)), CSVFormat.DEFAULT);
+	}
+
+	private static double utilization(double cpuSeconds, double availableSeconds) {
+		return availableSeconds > 0 ? cpuSeconds / availableSeconds : 0;
+	}
+
+	/**
+	 * Phases of an iteration, in the order they happen.
+	 */
+	private enum Phase {
+		iteration_start, replanning, prepare_mobsim, mobsim, after_mobsim, scoring, analysis, shutdown
+	}
+
+	private static final class IterationRecord {
+		private final int iteration;
+		private final Map<Phase, Double> seconds = new EnumMap<>(Phase.class);
+		private final Map<Phase, Map<String, ThreadCpuSampler.Usage>> threads = new EnumMap<>(Phase.class);
+		private long events;
+		private long peakHeap;
+		private long gcTime;
+		private long gcCount;
+
+		private IterationRecord(int iteration) {
+			this.iteration = iteration;
+		}
+
+		private double getSeconds(Phase phase) {
+			return seconds.getOrDefault(phase, 0.);
+		}
+
+		private double getCpuSeconds(Phase phase) {
+			double cpuSeconds = 0;
+			for (ThreadCpuSampler.Usage usage : threads.getOrDefault(phase, Map.of()).values()) {
+				cpuSeconds += usage.getCpuSeconds();
+			}
+			return cpuSeconds;
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package org.matsim.analysis;
+
+import it.unimi.dsi.fastutil.longs.Long2LongMap;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Samples the cpu time of all java threads periodically and sums it up per thread group, i.e. threads whose names only differ in a trailing
+ * number (e.g. the worker threads of the qsim). Threads are sampled periodically, because the qsim and the replanning create their threads
+ * per iteration, so they are gone when a phase ends. The cpu time of a thread after its last sample is lost.
+ */
+final class ThreadCpuSampler {
+
+	private static final Pattern TRAILING_NUMBER = Pattern.compile("[-_.#\\s]*\\d+$");
+
+	private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+	private final long intervalMillis;
+
+	/**
+	 * Cpu time at the last sample by thread id.
+	 */
+	private final Long2LongMap lastCpuTimes = new Long2LongOpenHashMap();
+	private final Map<String, Usage> usages = new TreeMap<>();
+
+	private ScheduledExecutorService executor;
+	private volatile long samplerThreadId = -1;
+
+	ThreadCpuSampler(long intervalMillis) {
+		this.intervalMillis = intervalMillis;
+	}
+
+	/**
+	 * Whether the jvm measures the cpu time of threads.
+	 */
+	boolean isSupported() {
+		return threads.isThreadCpuTimeSupported();
+	}
+
+	synchronized void start() {
+		if (!threads.isThreadCpuTimeEnabled()) {
+			threads.setThreadCpuTimeEnabled(true);
+		}
+		sample();
+		usages.clear();
+		executor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "ThreadCpuSampler");
+			thread.setDaemon(true);
+			samplerThreadId = thread.threadId();
+			return thread;
+		});
+		executor.scheduleAtFixedRate(this::sample, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	synchronized void stop() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+
+	/**
+	 * Returns the usage per thread group since the last call, sorted by group name.
+	 */
+	synchronized Map<String, Usage> collect() {
+		sample();
+		Map<String, Usage> result = new TreeMap<>(usages);
+		usages.clear();
+		return result;
+	}
+
+	private synchronized void sample() {
+		long[] ids = threads.getAllThreadIds();
+		ThreadInfo[] infos = threads.getThreadInfo(ids);
+
+		LongSet alive = new LongOpenHashSet(ids.length);
+		for (int i = 0; i < ids.length; i++) {
+			long cpuTime = threads.getThreadCpuTime(ids[i]);
+			if (infos[i] == null || cpuTime < 0 || ids[i] == samplerThreadId) {
+				continue;
+			}
+			alive.add(ids[i]);
+			// new threads count with their whole cpu time
+			long delta = cpuTime - lastCpuTimes.getOrDefault(ids[i], 0L);
+			lastCpuTimes.put(ids[i], cpuTime);
+			if (delta > 0) {
+				Usage usage = usages.computeIfAbsent(getGroup(infos[i].getThreadName()), k -> new Usage());
+				usage.cpuNanos += delta;
+				usage.threadIds.add(ids[i]);
+			}
+		}
+		lastCpuTimes.keySet().retainAll(alive);
+	}
+
+	static String getGroup(String threadName) {
+		String group = TRAILING_NUMBER.matcher(threadName).replaceFirst("");
+		return group.isEmpty() ? threadName : group;
+	}
+
+	/**
+	 * Cpu time of a thread group and the threads that were busy.
+	 */
+	static final class Usage {
+		private final LongSet threadIds = new LongOpenHashSet();
+		private long cpuNanos;
+
+		double getCpuSeconds() {
+			return cpuNanos / 1e9;
+		}
+
+		int getNumberOfThreads() {
+			return threadIds.size();
+		}
+	}
+}
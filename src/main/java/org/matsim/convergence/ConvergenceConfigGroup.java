@@ -0,0 +1,108 @@
+package org.matsim.convergence;
+
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.PositiveOrZero;
+import org.matsim.core.config.ReflectiveConfigGroup;
+
+/**
+ * Config group of the {@link ConvergenceMonitor}, which switches off innovation and ends the run early once the executed score, the mode
+ * share stay within the tolerances and the share of changed selected plans stays below its maximum for a number of iterations.
+ */
+public final class ConvergenceConfigGroup extends ReflectiveConfigGroup {
+	public static final String GROUP_NAME = "kelheimConvergence";
+
+	@Parameter
+	@Comment("Whether the run ends early when it has converged. lastIteration of the controller is still the maximum.")
+	private boolean enabled = false;
+
+	@Parameter
+	@Comment("Number of consecutive iterations all criteria have to be within their tolerances.")
+	@Positive
+	private int iterations = 20;
+
+	@Parameter
+	@Comment("Convergence is not checked before this iteration.")
+	@PositiveOrZero
+	private int minIteration = 50;
+
+	@Parameter
+	@Comment("Maximum difference between the highest and lowest average executed score in the window, relative to the mean.")
+	@PositiveOrZero
+	private double scoreTolerance = 0.002;
+
+	@Parameter
+	@Comment("Maximum difference between the highest and lowest share of every main mode in the window.")
+	@PositiveOrZero
+	private double modeShareTolerance = 0.005;
+
+	@Parameter
+	@Comment("Maximum share of persons whose selected plan changed, in every iteration of the window. Switching back to an earlier plan " +
+		"counts as change as well. Innovation always creates a new selected plan, so this has to be above the share of innovative strategies.")
+	@PositiveOrZero
+	private double maxChangedPlansShare = 0.35;
+
+	@Parameter
+	@Comment("Iterations without innovation (only plan selection) after convergence, before the run ends.")
+	@Positive
+	private int iterationsWithoutInnovation = 10;
+
+	public ConvergenceConfigGroup() {
+		super(GROUP_NAME);
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public int getIterations() {
+		return iterations;
+	}
+
+	public void setIterations(int iterations) {
+		this.iterations = iterations;
+	}
+
+	public int getMinIteration() {
+		return minIteration;
+	}
+
+	public void setMinIteration(int minIteration) {
+		this.minIteration = minIteration;
+	}
+
+	public double getScoreTolerance() {
+		return scoreTolerance;
+	}
+
+	public void setScoreTolerance(double scoreTolerance) {
+		this.scoreTolerance = scoreTolerance;
+	}
+
+	public double getModeShareTolerance() {
+		return modeShareTolerance;
+	}
+
+	public void setModeShareTolerance(double modeShareTolerance) {
+		this.modeShareTolerance = modeShareTolerance;
+	}
+
+	public double getMaxChangedPlansShare() {
+		return maxChangedPlansShare;
+	}
+
+	public void setMaxChangedPlansShare(double maxChangedPlansShare) {
+		this.maxChangedPlansShare = maxChangedPlansShare;
+	}
+
+	public int getIterationsWithoutInnovation() {
+		return iterationsWithoutInnovation;
+	}
+
+	public void setIterationsWithoutInnovation(int iterationsWithoutInnovation) {
+		this.iterationsWithoutInnovation = iterationsWithoutInnovation;
+	}
+}
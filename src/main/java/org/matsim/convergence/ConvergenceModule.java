@@ -0,0 +1,19 @@
+package org.matsim.convergence;
+
+import com.google.inject.Singleton;
+import org.matsim.core.controler.AbstractModule;
+import org.matsim.core.controler.TerminationCriterion;
+
+/**
+ * Installs the {@link ConvergenceMonitor} as termination criterion. Has to be added as overriding module, as it replaces the default
+ * termination at the last iteration.
+ */
+public final class ConvergenceModule extends AbstractModule {
+
+	@Override
+	public void install() {
+		bind(ConvergenceMonitor.class).in(Singleton.class);
+		addControlerListenerBinding().to(ConvergenceMonitor.class);
+		bind(TerminationCriterion.class).to(ConvergenceMonitor.class);
+	}
+}
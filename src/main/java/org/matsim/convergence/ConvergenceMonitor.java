@@ -0,0 +1,187 @@
+package org.matsim.convergence;
+
+import com.google.inject.Inject;
+import it.unimi.dsi.fastutil.objects.Object2DoubleMap;
+import it.unimi.dsi.fastutil.objects.Object2DoubleOpenHashMap;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.IdMap;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.config.groups.ReplanningConfigGroup;
+import org.matsim.core.controler.OutputDirectoryHierarchy;
+import org.matsim.core.controler.TerminationCriterion;
+import org.matsim.core.controler.events.IterationEndsEvent;
+import org.matsim.core.controler.events.ShutdownEvent;
+import org.matsim.core.controler.events.StartupEvent;
+import org.matsim.core.controler.listener.IterationEndsListener;
+import org.matsim.core.controler.listener.ShutdownListener;
+import org.matsim.core.controler.listener.StartupListener;
+import org.matsim.core.replanning.GenericPlanStrategy;
+import org.matsim.core.replanning.ReplanningUtils;
+import org.matsim.core.replanning.StrategyManager;
+import org.matsim.core.router.AnalysisMainModeIdentifier;
+import org.matsim.core.router.TripStructureUtils;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Ends the run before the last iteration once it has converged, i.e. when for {@link ConvergenceConfigGroup#getIterations()} iterations
+ * <ul>
+ *     <li>the average executed score and</li>
+ *     <li>the main mode share of all trips stay within their tolerances, and</li>
+ *     <li>the share of persons whose selected plan changed compared to the previous iteration (a new plan from innovation or the selection
+ *     of another plan) stays below its maximum.</li>
+ * </ul>
+ * A selected plan counts as changed if it is another plan object than in the previous iteration. This also counts switching back to a plan
+ * that was selected before, and a new plan from innovation that does not differ from the plan it was copied from. The plan inheritance
+ * records are not used instead: they only tell which plans innovation created, and since such a plan is always selected in its iteration,
+ * their share follows the strategy weights, not the convergence of the plan selection.
+ * Innovation is then switched off and the run ends after {@link ConvergenceConfigGroup#getIterationsWithoutInnovation()} more iterations.
+ * The metrics are written to {@code convergence.csv}.
+ */
+public final class ConvergenceMonitor implements StartupListener, IterationEndsListener, ShutdownListener, TerminationCriterion {
+
+	private static final Logger log = LogManager.getLogger(ConvergenceMonitor.class);
+
+	private final ConvergenceConfigGroup convergenceConfig;
+	private final Config config;
+	private final Population population;
+	private final AnalysisMainModeIdentifier mainModeIdentifier;
+	private final StrategyManager strategyManager;
+	private final OutputDirectoryHierarchy outputDirectoryHierarchy;
+	private final ConvergenceWindow window;
+
+	/**
+	 * Selected plan of every person in the previous iteration, compared by identity.
+	 */
+	private final IdMap<Person, Plan> selectedPlans = new IdMap<>(Person.class);
+
+	private int lastIteration;
+	private boolean innovation = true;
+	private CSVPrinter printer;
+
+	@Inject
+	public ConvergenceMonitor(Config config, Population population, AnalysisMainModeIdentifier mainModeIdentifier, StrategyManager strategyManager,
+							  OutputDirectoryHierarchy outputDirectoryHierarchy) {
+		this.convergenceConfig = ConfigUtils.addOrGetModule(config, ConvergenceConfigGroup.class);
+		this.config = config;
+		this.population = population;
+		this.mainModeIdentifier = mainModeIdentifier;
+		this.strategyManager = strategyManager;
+		this.outputDirectoryHierarchy = outputDirectoryHierarchy;
+		this.window = new ConvergenceWindow(convergenceConfig.getIterations());
+		this.lastIteration = config.controller().getLastIteration();
+	}
+
+	@Override
+	public void notifyStartup(StartupEvent event) {
+		try {
+			printer = new CSVPrinter(new FileWriter(outputDirectoryHierarchy.getOutputFilename("convergence.csv")), CSVFormat.DEFAULT);
+			printer.printRecord("iteration", "avg_executed_score", "changed_plans_share", "score_range", "mode_share_range", "max_changed_plans_share",
+				"innovation");
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public void notifyIterationEnds(IterationEndsEvent event) {
+		double scoreSum = 0;
+		int scores = 0;
+		int changedPlans = 0;
+		int trips = 0;
+		Object2DoubleMap<String> modeShares = new Object2DoubleOpenHashMap<>();
+
+		for (Person person : population.getPersons().values()) {
+			Plan plan = person.getSelectedPlan();
+			if (plan == null) {
+				continue;
+			}
+			if (plan.getScore() != null) {
+				scoreSum += plan.getScore();
+				scores++;
+			}
+			if (selectedPlans.put(person.getId(), plan) != plan) {
+				changedPlans++;
+			}
+			for (TripStructureUtils.Trip trip : TripStructureUtils.getTrips(plan)) {
+				modeShares.mergeDouble(mainModeIdentifier.identifyMainMode(trip.getTripElements()), 1, Double::sum);
+				trips++;
+			}
+		}
+		for (Object2DoubleMap.Entry<String> entry : modeShares.object2DoubleEntrySet()) {
+			entry.setValue(entry.getDoubleValue() / trips);
+		}
+
+		double score = scores > 0 ? scoreSum / scores : 0;
+		double changedPlansShare = population.getPersons().isEmpty() ? 0 : (double) changedPlans / population.getPersons().size();
+		window.add(score, changedPlansShare, modeShares);
+
+		int iteration = event.getIteration();
+		if (innovation && iteration >= convergenceConfig.getMinIteration() && window.isConverged(convergenceConfig)) {
+			lastIteration = Math.min(lastIteration, iteration + convergenceConfig.getIterationsWithoutInnovation());
+			switchOffInnovation();
+			log.info("Converged in iteration {}, innovation is switched off and the run ends after iteration {}", iteration, lastIteration);
+		}
+
+		write(iteration, score, changedPlansShare);
+	}
+
+	private void switchOffInnovation() {
+		innovation = false;
+
+		Set<String> subpopulations = new LinkedHashSet<>();
+		for (ReplanningConfigGroup.StrategySettings settings : config.replanning().getStrategySettings()) {
+			subpopulations.add(settings.getSubpopulation());
+		}
+		for (String subpopulation : subpopulations) {
+			List<GenericPlanStrategy<Plan, Person>> strategies = strategyManager.getStrategies(subpopulation);
+			for (GenericPlanStrategy<Plan, Person> strategy : strategies) {
+				if (ReplanningUtils.isInnovativeStrategy(strategy)) {
+					strategyManager.changeWeightOfStrategy(strategy, subpopulation, 0.);
+				}
+			}
+		}
+	}
+
+	private void write(int iteration, double score, double changedPlansShare) {
+		boolean full = window.isFull();
+		try {
+			printer.printRecord(iteration, score, changedPlansShare, full ? window.getRelativeScoreRange() : "",
+				full ? window.getModeShareRange() : "", full ? window.getMaxChangedPlansShare() : "", innovation);
+			printer.flush();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public boolean mayTerminateAfterIteration(int iteration) {
+		return iteration >= lastIteration;
+	}
+
+	@Override
+	public boolean doTerminate(int iteration) {
+		return iteration >= lastIteration;
+	}
+
+	@Override
+	public void notifyShutdown(ShutdownEvent event) {
+		try {
+			printer.close();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
@@ -0,0 +1,98 @@
+package org.matsim.convergence;
+
+import it.unimi.dsi.fastutil.objects.Object2DoubleMap;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The convergence metrics of the last iterations and their ranges, i.e. the difference between the highest and the lowest value.
+ */
+final class ConvergenceWindow {
+
+	private final int size;
+	private final Deque<Metrics> metrics = new ArrayDeque<>();
+
+	ConvergenceWindow(int size) {
+		this.size = size;
+	}
+
+	/**
+	 * Adds the metrics of an iteration and removes the oldest, if the window is full.
+	 */
+	void add(double score, double changedPlansShare, Object2DoubleMap<String> modeShares) {
+		if (metrics.size() == size) {
+			metrics.removeFirst();
+		}
+		metrics.addLast(new Metrics(score, changedPlansShare, modeShares));
+	}
+
+	boolean isFull() {
+		return metrics.size() == size;
+	}
+
+	/**
+	 * Range of the average executed score, relative to the absolute mean.
+	 */
+	double getRelativeScoreRange() {
+		double min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+		double sum = 0;
+		for (Metrics m : metrics) {
+			min = Math.min(min, m.score);
+			max = Math.max(max, m.score);
+			sum += m.score;
+		}
+		double mean = Math.abs(sum / metrics.size());
+		return mean > 0 ? (max - min) / mean : max - min;
+	}
+
+	/**
+	 * Highest share of changed selected plans. A range would also be small if many plans change in every iteration.
+	 */
+	double getMaxChangedPlansShare() {
+		double max = 0;
+		for (Metrics m : metrics) {
+			max = Math.max(max, m.changedPlansShare);
+		}
+		return max;
+	}
+
+	/**
+	 * Whether the window is full and all metrics are within the limits of the config.
+	 */
+	boolean isConverged(ConvergenceConfigGroup config) {
+		return isFull()
+			&& getRelativeScoreRange() <= config.getScoreTolerance()
+			&& getModeShareRange() <= config.getModeShareTolerance()
+			&& getMaxChangedPlansShare() <= config.getMaxChangedPlansShare();
+	}
+
+	/**
+	 * Largest range of the share of a mode. Modes that are missing in an iteration have a share of 0 there.
+	 */
+	double getModeShareRange() {
+		Set<String> modes = new HashSet<>();
+		for (Metrics m : metrics) {
+			modes.addAll(m.modeShares.keySet());
+		}
+
+		double range = 0;
+		for (String mode : modes) {
+			double min = Double.POSITIVE_INFINITY;
+			double max = Double.NEGATIVE_INFINITY;
+			for (Metrics m : metrics) {
+				double share = m.modeShares.getOrDefault(mode, 0.);
+				min = Math.min(min, share);
+				max = Math.max(max, share);
+			}
+			range = Math.max(range, max - min);
+		}
+		return range;
+	}
+
+	private record Metrics(double score, double changedPlansShare, Object2DoubleMap<String> modeShares) {
+	}
+}
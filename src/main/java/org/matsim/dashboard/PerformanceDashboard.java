@@ -0,0 +1,75 @@
+package org.matsim.dashboard;
+
+import org.matsim.simwrapper.Dashboard;
+import org.matsim.simwrapper.Header;
+import org.matsim.simwrapper.Layout;
+import org.matsim.simwrapper.viz.Bar;
+import org.matsim.simwrapper.viz.Line;
+import org.matsim.simwrapper.viz.Table;
+
+import java.util.List;
+
+/**
+ * Computational performance of the run per iteration, as recorded by the {@link org.matsim.analysis.PerformanceProfilingListener}.
+ */
+public class PerformanceDashboard implements Dashboard {
+
+	private static final String PERFORMANCE = "(*.)?performance.csv";
+
+	@Override
+	public void configure(Header header, Layout layout) {
+		header.title = "Performance";
+		header.description = "Computation time, memory and cpu usage per iteration. Use it to tune the number of threads, the sample size " +
+			"and the jvm settings.";
+
+		layout.row("time")
+			.el(Bar.class, (viz, data) -> {
+				viz.title = "Time per iteration";
+				viz.description = "by phase, in seconds. The shutdown phase of the last iteration includes the SimWrapper dashboards.";
+				viz.dataset = data.output(PERFORMANCE);
+				viz.x = "iteration";
+				viz.columns = List.of("iteration_start_s", "replanning_s", "prepare_mobsim_s", "mobsim_s", "after_mobsim_s", "scoring_s",
+					"analysis_s", "shutdown_s");
+				viz.stacked = true;
+				viz.xAxisName = "Iteration";
+				viz.yAxisName = "Time [s]";
+				viz.width = 2.;
+			})
+			.el(Line.class, (viz, data) -> {
+				viz.title = "Mobsim throughput";
+				viz.description = "events per second";
+				viz.dataset = data.output(PERFORMANCE);
+				viz.x = "iteration";
+				viz.columns = List.of("events_per_s");
+				viz.xAxisName = "Iteration";
+				viz.yAxisName = "Events / s";
+			});
+
+		layout.row("resources")
+			.el(Line.class, (viz, data) -> {
+				viz.title = "Memory and garbage collection";
+				viz.description = "peak heap in MB and gc time in seconds";
+				viz.dataset = data.output(PERFORMANCE);
+				viz.x = "iteration";
+				viz.columns = List.of("peak_heap_mb", "gc_time_s");
+				viz.xAxisName = "Iteration";
+			})
+			.el(Line.class, (viz, data) -> {
+				viz.title = "CPU utilization";
+				viz.description = "cpu time relative to the configured number of threads";
+				viz.dataset = data.output(PERFORMANCE);
+				viz.x = "iteration";
+				viz.columns = List.of("mobsim_cpu_utilization", "replanning_cpu_utilization");
+				viz.xAxisName = "Iteration";
+			});
+
+		layout.row("threads")
+			.el(Table.class, (viz, data) -> {
+				viz.title = "CPU time per thread group";
+				viz.description = "per iteration and phase";
+				viz.dataset = data.output("(*.)?performance_threads.csv");
+				viz.enableFilter = true;
+				viz.width = 1.;
+			});
+	}
+}
@@ -0,0 +1,132 @@
+package org.matsim.drtFare;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.application.MATSimAppCommand;
+import org.matsim.contrib.drt.util.DrtEventsReaders;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.events.EventsUtils;
+import org.matsim.core.network.NetworkUtils;
+import picocli.CommandLine;
+
+import javax.annotation.Nullable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.matsim.application.ApplicationUtils.globFile;
+
+/**
+ * Estimates the fare revenue of many fare policies from the output events of a single run. The events are read once and the charged
+ * passengers are counted per zone relation, which is then evaluated for every combination of base fare and surcharge of the two-zone rule,
+ * and for every combination of base fare and fare matrix file (see {@link ZonalFareMatrix#readFares}).
+ * This is a first-order estimate: the demand reaction to the changed fares is not considered.
+ */
+@CommandLine.Command(
+		name = "drt-fare-sweep",
+		description = "Estimate the drt fare revenue of a grid of base fares and surcharges or fare matrices by replaying the output events of a run"
+)
+public class DrtFarePolicySweep implements MATSimAppCommand {
+
+	private static final Logger log = LogManager.getLogger(DrtFarePolicySweep.class);
+
+	@CommandLine.Option(names = "--directory", description = "path to matsim output directory", required = true)
+	private Path directory;
+
+	@CommandLine.Option(names = "--mode", description = "drt mode to analyze", defaultValue = TransportMode.drt)
+	private String mode;
+
+	@CommandLine.Option(names = "--base-fares", description = "base fares to evaluate", arity = "1..*", defaultValue = "2.0")
+	private List<Double> baseFares;
+
+	@CommandLine.Option(names = "--surcharges", description = "surcharges for trips from / to zone 2 to evaluate", arity = "1..*", defaultValue = "1.0")
+	private List<Double> surcharges;
+
+	@CommandLine.Option(names = "--fare-matrices", description = "fare matrix files (tsv: from_zone, to_zone, fare) to evaluate with each base " +
+		"fare, in addition to the surcharges", arity = "1..*")
+	private List<String> fareMatrixFiles = List.of();
+
+	@CommandLine.Option(names = "--zone-base-fares", description = "base fares per zone (tsv: zone, base_fare) for the fare matrices, other " +
+		"zones are charged the base fare of the variant")
+	private String zoneBaseFaresFile;
+
+	@CommandLine.Option(names = "--shp", description = "shape file of the fare zones", defaultValue = KelheimDrtFareModule.FARE_ZONES_SHAPE_FILE)
+	private String shapeFile;
+
+	public static void main(String[] args) {
+		new DrtFarePolicySweep().execute(args);
+	}
+
+	@Override
+	public Integer call() throws Exception {
+		Path networkPath = globFile(directory, "*output_network.*");
+		Path eventsPath = globFile(directory, "*output_events.*");
+		Path outputFolder = directory.resolve("analysis-drt-fare-sweep");
+
+		if (!Files.exists(outputFolder)) {
+			Files.createDirectory(outputFolder);
+		}
+
+		Network network = NetworkUtils.readNetwork(networkPath.toString());
+		FareZoneIndex zoneIndex = FareZoneProvider.getZoneIndex(network, shapeFile);
+
+		// the relations only depend on the zones, so any fare matrix over the same zones can be used for counting
+		DrtFareRelationCounter counter = new DrtFareRelationCounter(mode, network, ZonalFareMatrix.createTwoZoneFares(zoneIndex, 0, 0));
+		EventsManager eventsManager = EventsUtils.createEventsManager();
+		eventsManager.addHandler(counter);
+		DrtEventsReaders.createEventsReader(eventsManager).readFile(eventsPath.toString());
+
+		List<Variant> variants = new ArrayList<>();
+		for (double baseFare : baseFares) {
+			for (double surcharge : surcharges) {
+				variants.add(new Variant(baseFare, surcharge, null, ZonalFareMatrix.createTwoZoneFares(zoneIndex, baseFare, surcharge)));
+			}
+			for (String fareMatrixFile : fareMatrixFiles) {
+				variants.add(new Variant(baseFare, null, fareMatrixFile,
+					ZonalFareMatrix.readFares(zoneIndex, baseFare, zoneBaseFaresFile, fareMatrixFile)));
+			}
+		}
+
+		long[] passengers = counter.getPassengers();
+		log.info("Evaluating {} fare variants...", variants.size());
+
+		Path totalsPath = outputFolder.resolve(mode + "_fare_sweep.tsv");
+		Path relationsPath = outputFolder.resolve(mode + "_fare_sweep_zones.tsv");
+		try (CSVPrinter totals = new CSVPrinter(Files.newBufferedWriter(totalsPath, StandardCharsets.UTF_8), CSVFormat.TDF);
+			 CSVPrinter relations = new CSVPrinter(Files.newBufferedWriter(relationsPath, StandardCharsets.UTF_8), CSVFormat.TDF)) {
+			totals.printRecord("base_fare", "surcharge", "fare_matrix", "passengers", "revenue", "mean_fare");
+			relations.printRecord("base_fare", "surcharge", "fare_matrix", "from_zone", "to_zone", "passengers", "revenue");
+
+			for (Variant variant : variants) {
+				long totalPassengers = 0;
+				double totalRevenue = 0;
+				for (int relation = 0; relation < passengers.length; relation++) {
+					if (passengers[relation] == 0) {
+						continue;
+					}
+					double revenue = passengers[relation] * variant.fares().getFare(relation);
+					relations.printRecord(variant.baseFare(), variant.surcharge(), variant.fareMatrix(), variant.fares().getFromZoneId(relation),
+						variant.fares().getToZoneId(relation), passengers[relation], revenue);
+					totalPassengers += passengers[relation];
+					totalRevenue += revenue;
+				}
+				totals.printRecord(variant.baseFare(), variant.surcharge(), variant.fareMatrix(), totalPassengers, totalRevenue,
+					totalPassengers == 0 ? 0 : totalRevenue / totalPassengers);
+			}
+		}
+
+		return 0;
+	}
+
+	/**
+	 * One fare policy, the surcharge is only set for the two-zone rule and the fare matrix file only for fare matrices (empty in the output).
+	 */
+	private record Variant(double baseFare, @Nullable Double surcharge, @Nullable String fareMatrix, ZonalFareMatrix fares) {
+	}
+}
@@ -0,0 +1,71 @@
+package org.matsim.drtFare;
+
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.contrib.drt.passenger.events.DrtRequestSubmittedEvent;
+import org.matsim.contrib.drt.passenger.events.DrtRequestSubmittedEventHandler;
+import org.matsim.contrib.dvrp.passenger.PassengerDroppedOffEvent;
+import org.matsim.contrib.dvrp.passenger.PassengerDroppedOffEventHandler;
+import org.matsim.contrib.dvrp.passenger.PassengerRequestRejectedEvent;
+import org.matsim.contrib.dvrp.passenger.PassengerRequestRejectedEventHandler;
+
+import java.util.Arrays;
+
+/**
+ * Counts the dropped off (i.e. charged) passengers per relation of a {@link ZonalFareMatrix}, following the same request life cycle as the
+ * {@link KelheimDrtFareHandler}. The revenue of any fare matrix over the same zones is then the sum over all relations of count times fare.
+ */
+final class DrtFareRelationCounter implements DrtRequestSubmittedEventHandler, PassengerDroppedOffEventHandler, PassengerRequestRejectedEventHandler {
+
+	private final String mode;
+	private final Network network;
+	private final ZonalFareMatrix fareMatrix;
+	private final OpenDrtRequests openRequests = new OpenDrtRequests();
+	private final long[] passengers;
+
+	DrtFareRelationCounter(String mode, Network network, ZonalFareMatrix fareMatrix) {
+		this.mode = mode;
+		this.network = network;
+		this.fareMatrix = fareMatrix;
+		this.passengers = new long[fareMatrix.getNumberOfRelations()];
+	}
+
+	@Override
+	public void handleEvent(DrtRequestSubmittedEvent event) {
+		if (event.getMode().equals(mode)) {
+			Link fromLink = network.getLinks().get(event.getFromLinkId());
+			Link toLink = network.getLinks().get(event.getToLinkId());
+			openRequests.submit(event.getRequestId(), fareMatrix.getRelation(fromLink, toLink), event.getPersonIds().size());
+		}
+	}
+
+	@Override
+	public void handleEvent(PassengerDroppedOffEvent event) {
+		if (event.getMode().equals(mode)) {
+			int relation = openRequests.dropOff(event.getRequestId());
+			if (relation != OpenDrtRequests.NOT_SUBMITTED) {
+				passengers[relation]++;
+			}
+		}
+	}
+
+	@Override
+	public void handleEvent(PassengerRequestRejectedEvent event) {
+		if (event.getMode().equals(mode)) {
+			openRequests.reject(event.getRequestId());
+		}
+	}
+
+	@Override
+	public void reset(int iteration) {
+		openRequests.clear();
+		Arrays.fill(passengers, 0);
+	}
+
+	/**
+	 * Number of charged passengers per relation.
+	 */
+	long[] getPassengers() {
+		return passengers;
+	}
+}
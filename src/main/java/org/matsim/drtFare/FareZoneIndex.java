@@ -0,0 +1,83 @@
+package org.matsim.drtFare;
+
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.core.utils.geometry.geotools.MGC;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Precomputed lookup of the fare zone a link belongs to. The zone of a link is the zone containing its to-node.
+ * The lookup is done once per network and stored in an array over the link index, so that resolving the zone of a request
+ * is a plain array access. Only links that were not part of the network at construction time are resolved via the geometries.
+ * If zones overlap, the zone with the lexicographically smallest id wins.
+ */
+final class FareZoneIndex {
+
+	static final int NO_ZONE = -1;
+	private static final int NOT_INDEXED = -2;
+
+	private final String[] zoneIds;
+	private final PreparedGeometry[] zoneGeometries;
+	private final int[] linkZones;
+
+	FareZoneIndex(Network network, Map<String, PreparedGeometry> zonalSystem) {
+		Map<String, PreparedGeometry> sortedZones = new TreeMap<>(zonalSystem);
+		this.zoneIds = sortedZones.keySet().toArray(new String[0]);
+		this.zoneGeometries = sortedZones.values().toArray(new PreparedGeometry[0]);
+
+		this.linkZones = new int[Id.getNumberOfIds(Link.class)];
+		Arrays.fill(linkZones, NOT_INDEXED);
+		for (Link link : network.getLinks().values()) {
+			linkZones[link.getId().index()] = findZone(link.getToNode().getCoord());
+		}
+	}
+
+	/**
+	 * Returns the index of the zone the to-node of the link lies in, or {@link #NO_ZONE}.
+	 */
+	int getZone(Link link) {
+		int linkIdx = link.getId().index();
+		if (linkIdx < linkZones.length && linkZones[linkIdx] != NOT_INDEXED) {
+			return linkZones[linkIdx];
+		}
+		// link was added after the index has been built
+		return findZone(link.getToNode().getCoord());
+	}
+
+	/**
+	 * Returns the index of the zone with the given id (Region_ID in the shape file), or {@link #NO_ZONE}.
+	 */
+	int getZone(String zoneId) {
+		for (int i = 0; i < zoneIds.length; i++) {
+			if (zoneIds[i].equals(zoneId)) {
+				return i;
+			}
+		}
+		return NO_ZONE;
+	}
+
+	String getZoneId(int zone) {
+		return zoneIds[zone];
+	}
+
+	int getNumberOfZones() {
+		return zoneIds.length;
+	}
+
+	private int findZone(Coord coord) {
+		Point point = MGC.coord2Point(coord);
+		for (int i = 0; i < zoneGeometries.length; i++) {
+			if (zoneGeometries[i].contains(point)) {
+				return i;
+			}
+		}
+		return NO_ZONE;
+	}
+}
@@ -0,0 +1,126 @@
+package org.matsim.drtFare;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.geotools.api.feature.simple.SimpleFeature;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.core.utils.gis.GeoFileReader;
+
+import javax.annotation.Nullable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Loads the fare zones (Region_ID -> geometry) of a shape file once per JVM and shares them, as well as the {@link FareZoneIndex} built
+ * from them, between all drt modes, iterations and runs within the same JVM.
+ * Shape files given as URL are downloaded into a local cache directory first, so that later runs do not need to access the network.
+ * The cache directory can be set via the system property {@value #CACHE_DIR_PROPERTY}.
+ */
+final class FareZoneProvider {
+
+	static final String CACHE_DIR_PROPERTY = "kelheim.fareZones.cacheDir";
+
+	private static final Logger log = LogManager.getLogger(FareZoneProvider.class);
+
+	/**
+	 * Files belonging to a shape file. The .shp file is downloaded last, so that its existence marks a complete local copy.
+	 */
+	private static final String[] SHAPE_FILE_EXTENSIONS = {".shx", ".dbf", ".prj", ".cpg", ".shp"};
+	private static final Set<String> OPTIONAL_EXTENSIONS = Set.of(".prj", ".cpg");
+
+	private static final Map<String, Map<String, PreparedGeometry>> ZONES = new ConcurrentHashMap<>();
+	private static final Map<Network, Map<String, FareZoneIndex>> INDICES = new WeakHashMap<>();
+
+	private FareZoneProvider() {
+	}
+
+	/**
+	 * Returns the zone index of the given shape file for the network. An empty index is returned if no shape file is given.
+	 */
+	static synchronized FareZoneIndex getZoneIndex(Network network, @Nullable String shapeFile) {
+		return INDICES.computeIfAbsent(network, n -> new HashMap<>())
+			.computeIfAbsent(shapeFile == null ? "" : shapeFile, s -> new FareZoneIndex(network, getZones(shapeFile)));
+	}
+
+	/**
+	 * Returns the prepared zone geometries of the shape file, keyed by Region_ID.
+	 */
+	static Map<String, PreparedGeometry> getZones(@Nullable String shapeFile) {
+		if (shapeFile == null) {
+			log.error("Warning: Shapefile Path is null! All the trip will be charged the base price");
+			return Collections.emptyMap();
+		}
+		return ZONES.computeIfAbsent(shapeFile, FareZoneProvider::readZones);
+	}
+
+	private static Map<String, PreparedGeometry> readZones(String shapeFile) {
+		Path localShapeFile = shapeFile.startsWith("http") ? getLocalCopy(shapeFile) : Path.of(shapeFile);
+
+		log.info("Reading shape file {}...", localShapeFile);
+		Map<String, PreparedGeometry> zones = new LinkedHashMap<>();
+		for (SimpleFeature feature : GeoFileReader.getAllFeatures(localShapeFile.toString())) {
+			zones.put(feature.getAttribute("Region_ID").toString(), PreparedGeometryFactory.prepare((Geometry) feature.getDefaultGeometry()));
+		}
+		return Collections.unmodifiableMap(zones);
+	}
+
+	private static Path getLocalCopy(String url) {
+		String fileName = url.substring(url.lastIndexOf('/') + 1);
+		String baseName = fileName.substring(0, fileName.lastIndexOf('.'));
+		String baseUrl = url.substring(0, url.lastIndexOf('.'));
+
+		// the hash of the url avoids clashes between equally named files from different locations
+		Path directory = getCacheDirectory().resolve(Integer.toHexString(url.hashCode()));
+		Path localShapeFile = directory.resolve(fileName);
+		if (Files.exists(localShapeFile)) {
+			log.info("Using local copy {} of {}", localShapeFile, url);
+			return localShapeFile;
+		}
+
+		log.info("Downloading {} to {}...", url, directory);
+		try {
+			Files.createDirectories(directory);
+			for (String extension : SHAPE_FILE_EXTENSIONS) {
+				Path target = directory.resolve(baseName + extension);
+				Path part = directory.resolve(baseName + extension + ".part");
+				try (InputStream in = URI.create(baseUrl + extension).toURL().openStream()) {
+					Files.copy(in, part, StandardCopyOption.REPLACE_EXISTING);
+				} catch (FileNotFoundException e) {
+					if (OPTIONAL_EXTENSIONS.contains(extension)) {
+						continue;
+					}
+					throw e;
+				}
+				Files.move(part, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not download shape file " + url + ". Either make it available under " + localShapeFile +
+				" or use a local path for the shape file.", e);
+		}
+		return localShapeFile;
+	}
+
+	private static Path getCacheDirectory() {
+		String cacheDir = System.getProperty(CACHE_DIR_PROPERTY);
+		if (cacheDir != null) {
+			return Path.of(cacheDir);
+		}
+		return Path.of(System.getProperty("user.home"), ".cache", "matsim-kelheim", "fare-zones");
+	}
+}
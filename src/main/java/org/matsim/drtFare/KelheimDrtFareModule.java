@@ -8,32 +8,49 @@ import org.matsim.contrib.dvrp.run.AbstractDvrpModeModule;
  * Module to bind fare handlers.
  */
 public class KelheimDrtFareModule extends AbstractDvrpModeModule {
+	public static final String FARE_ZONES_SHAPE_FILE = "https://svn.vsp.tu-berlin.de/repos/public-svn/matsim/scenarios/countries/de/kelheim/shp/KEXI-fare-shp/DrtFareZonalSystem2.shp";
+
 	private final DrtConfigGroup drtCfg;
 	private final Network network;
 	private final double avFare;
 	private final double baseFare;
 	private final double surcharge;
+	private final String fareMatrixFile;
+	private final String zoneBaseFaresFile;
 
 	public KelheimDrtFareModule(DrtConfigGroup drtCfg, Network network, double avFare, double baseFare, double surcharge) {
+		this(drtCfg, network, avFare, baseFare, surcharge, null, null);
+	}
+
+	/**
+	 * Module with zone dependent fares for the KEXI service, see {@link KelheimDrtFareParams#getFareMatrixFile()}.
+	 */
+	public KelheimDrtFareModule(DrtConfigGroup drtCfg, Network network, double avFare, double baseFare, double surcharge,
+								String fareMatrixFile, String zoneBaseFaresFile) {
 		super(drtCfg.getMode());
 		this.drtCfg = drtCfg;
 		this.network = network;
 		this.avFare = avFare;
 		this.baseFare = baseFare;
 		this.surcharge = surcharge;
+		this.fareMatrixFile = fareMatrixFile;
+		this.zoneBaseFaresFile = zoneBaseFaresFile;
 	}
 
 	@Override
 	public void install() {
 		// Default pricing scheme
 		KelheimDrtFareParams kelheimDrtFareParams = new KelheimDrtFareParams(baseFare, surcharge, getMode());
-		kelheimDrtFareParams.setShapeFile("https://svn.vsp.tu-berlin.de/repos/public-svn/matsim/scenarios/countries/de/kelheim/shp/KEXI-fare-shp/DrtFareZonalSystem2.shp");
+		kelheimDrtFareParams.setShapeFile(FARE_ZONES_SHAPE_FILE);
+		kelheimDrtFareParams.setFareMatrixFile(fareMatrixFile);
+		kelheimDrtFareParams.setZoneBaseFaresFile(zoneBaseFaresFile);
 
 		// Special price for Autonomous vehicles
 		if (getMode().equals("av")) {
 			kelheimDrtFareParams.setBaseFare(avFare);
 			kelheimDrtFareParams.setZone2Surcharge(0.0);
 			kelheimDrtFareParams.setMode("av");
+			kelheimDrtFareParams.setFareMatrixFile(null);
 		}
 		addEventHandlerBinding().toInstance(new KelheimDrtFareHandler(getMode(), network, kelheimDrtFareParams));
 	}
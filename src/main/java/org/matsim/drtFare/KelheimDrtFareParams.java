@@ -19,6 +19,8 @@ public final class KelheimDrtFareParams extends ReflectiveConfigGroup {
 	public static final String DISTANCEFARE = "distanceFare_m";
 	public static final String MODE = "mode";
 	public static final String SHAPEFILE = "shapeFile";
+	public static final String ZONE_BASE_FARES_FILE = "zoneBaseFaresFile";
+	public static final String FARE_MATRIX_FILE = "fareMatrixFile";
 
 	@PositiveOrZero
 	private double baseFare;
@@ -36,6 +38,8 @@ public final class KelheimDrtFareParams extends ReflectiveConfigGroup {
 	private double distanceFare_m = 0.0;
 
 	private String shapeFile;
+	private String zoneBaseFaresFile;
+	private String fareMatrixFile;
 
 	public KelheimDrtFareParams(double baseFare, double zone2Surcharge, String mode) {
 		super(SET_NAME);
@@ -56,6 +60,11 @@ public final class KelheimDrtFareParams extends ReflectiveConfigGroup {
 		map.put(DISTANCEFARE, "drt fare per meter (positive or zero value)");
 		map.put(MODE, "transport mode for which the fare applies. Default: drt");
 		map.put(SHAPEFILE, "shape file of the DRT fare zonal system");
+		map.put(ZONE_BASE_FARES_FILE, "tsv file with the base fare per origin zone (columns: zone	base_fare). Zones not listed are charged the " +
+				"base fare. Only used together with the fare matrix file.");
+		map.put(FARE_MATRIX_FILE, "tsv file with the zone-to-zone fares added to the base fare (columns: from_zone	to_zone	fare). " +
+				"The zone 'outside' refers to locations not covered by the shape file. If unspecified, the zone 2 surcharge applies to all trips " +
+				"that do not start and end in zone 1.");
 		return map;
 	}
 
@@ -129,6 +138,26 @@ public final class KelheimDrtFareParams extends ReflectiveConfigGroup {
 		this.shapeFile = shapeFile;
 	}
 
+	@StringGetter(ZONE_BASE_FARES_FILE)
+	public String getZoneBaseFaresFile() {
+		return zoneBaseFaresFile;
+	}
+
+	@StringSetter(ZONE_BASE_FARES_FILE)
+	public void setZoneBaseFaresFile(String zoneBaseFaresFile) {
+		this.zoneBaseFaresFile = zoneBaseFaresFile;
+	}
+
+	@StringGetter(FARE_MATRIX_FILE)
+	public String getFareMatrixFile() {
+		return fareMatrixFile;
+	}
+
+	@StringSetter(FARE_MATRIX_FILE)
+	public void setFareMatrixFile(String fareMatrixFile) {
+		this.fareMatrixFile = fareMatrixFile;
+	}
+
 	@StringGetter(MODE)
 	public String getMode() {
 		return mode;
@@ -0,0 +1,61 @@
+package org.matsim.drtFare;
+
+import it.unimi.dsi.fastutil.ints.Int2LongMap;
+import it.unimi.dsi.fastutil.ints.Int2LongOpenHashMap;
+import org.matsim.api.core.v01.Id;
+import org.matsim.contrib.dvrp.optimizer.Request;
+
+/**
+ * Submitted drt requests whose passengers have not all been dropped off yet, together with their relation in the {@link ZonalFareMatrix}.
+ * The state is kept in a primitive map over the request index. A request is evicted once the last passenger of the (group) request
+ * has been dropped off or the request has been rejected, so the memory is bounded by the number of simultaneously open requests.
+ */
+final class OpenDrtRequests {
+
+	static final int NOT_SUBMITTED = -1;
+
+	/**
+	 * The upper 32 bits hold the relation of the request, the lower 32 bits the number of passengers that have not been dropped off yet.
+	 */
+	private final Int2LongMap requests = new Int2LongOpenHashMap();
+
+	OpenDrtRequests() {
+		requests.defaultReturnValue(NOT_SUBMITTED);
+	}
+
+	void submit(Id<Request> requestId, int relation, int passengers) {
+		requests.put(requestId.index(), ((long) relation << 32) | passengers);
+	}
+
+	/**
+	 * Registers the drop-off of one passenger of the request and returns the relation of the request, or {@link #NOT_SUBMITTED}.
+	 */
+	int dropOff(Id<Request> requestId) {
+		int requestIdx = requestId.index();
+		long state = requests.get(requestIdx);
+		if (state == NOT_SUBMITTED) {
+			return NOT_SUBMITTED;
+		}
+		int relation = (int) (state >>> 32);
+		// there are potentially multiple PassengerDroppedOffEvents per request (bc of groups), so only the last one evicts the request
+		int outstandingPassengers = (int) state - 1;
+		if (outstandingPassengers > 0) {
+			requests.put(requestIdx, ((long) relation << 32) | outstandingPassengers);
+		} else {
+			requests.remove(requestIdx);
+		}
+		return relation;
+	}
+
+	void reject(Id<Request> requestId) {
+		requests.remove(requestId.index());
+	}
+
+	int size() {
+		return requests.size();
+	}
+
+	void clear() {
+		requests.clear();
+	}
+}
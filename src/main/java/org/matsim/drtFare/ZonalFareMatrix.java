@@ -0,0 +1,156 @@
+package org.matsim.drtFare;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.core.utils.io.IOUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+/**
+ * Origin-destination fare table over the zones of a {@link FareZoneIndex}. The fare of a request is the base fare of its origin zone plus
+ * the zone-to-zone fare of its relation. Both are summed up beforehand, so that resolving the fare of a request takes the two link lookups
+ * of the zone index and one array read. Locations outside all zones form an additional zone with the id {@value #OUTSIDE}.
+ */
+final class ZonalFareMatrix {
+
+	static final String OUTSIDE = "outside";
+
+	private static final Logger log = LogManager.getLogger(ZonalFareMatrix.class);
+
+	private final FareZoneIndex zoneIndex;
+	/**
+	 * Number of zones, including the outside zone.
+	 */
+	private final int size;
+	private final double[] fares;
+
+	private ZonalFareMatrix(FareZoneIndex zoneIndex, double[] baseFares, double[] relationFares) {
+		this.zoneIndex = zoneIndex;
+		this.size = baseFares.length;
+		this.fares = new double[size * size];
+		for (int from = 0; from < size; from++) {
+			for (int to = 0; to < size; to++) {
+				fares[from * size + to] = baseFares[from] + relationFares[from * size + to];
+			}
+		}
+	}
+
+	/**
+	 * Creates the fare matrix as specified in the params. If no fare matrix file is given, the Kelheim two-zone rule applies:
+	 * trips within zone 1 are charged the base fare, all other trips additionally the zone 2 surcharge.
+	 */
+	static ZonalFareMatrix create(FareZoneIndex zoneIndex, KelheimDrtFareParams params) {
+		if (params.getFareMatrixFile() == null || params.getFareMatrixFile().isBlank()) {
+			return createTwoZoneFares(zoneIndex, params.getBaseFare(), params.getZone2Surcharge());
+		}
+		return readFares(zoneIndex, params.getBaseFare(), params.getZoneBaseFaresFile(), params.getFareMatrixFile());
+	}
+
+	static ZonalFareMatrix createTwoZoneFares(FareZoneIndex zoneIndex, double baseFare, double zone2Surcharge) {
+		int size = zoneIndex.getNumberOfZones() + 1;
+		double[] baseFares = new double[size];
+		Arrays.fill(baseFares, baseFare);
+		double[] relationFares = new double[size * size];
+
+		// If no shape file is provided, all the trips will be charged the base price
+		if (zoneIndex.getNumberOfZones() > 0) {
+			int zone1 = zoneIndex.getZone("1");
+			if (zone1 == FareZoneIndex.NO_ZONE) {
+				throw new RuntimeException("The shape file data entry is not prepared correctly. " +
+					"Please make sure the attribute of the shape file are in the correct format: " +
+					"Region_ID --> 1 or 2.");
+			}
+			Arrays.fill(relationFares, zone2Surcharge);
+			// trip within zone 1
+			relationFares[zone1 * size + zone1] = 0;
+		}
+		return new ZonalFareMatrix(zoneIndex, baseFares, relationFares);
+	}
+
+	/**
+	 * Reads the fares from tsv files. The base fares file (columns: zone	base_fare) is optional, zones not listed there are charged the default
+	 * base fare. The fare matrix file (columns: from_zone	to_zone	fare) holds the fares added to the base fare, relations not listed are free.
+	 */
+	static ZonalFareMatrix readFares(FareZoneIndex zoneIndex, double defaultBaseFare, String baseFaresFile, String fareMatrixFile) {
+		int size = zoneIndex.getNumberOfZones() + 1;
+		double[] baseFares = new double[size];
+		Arrays.fill(baseFares, defaultBaseFare);
+		double[] relationFares = new double[size * size];
+
+		if (baseFaresFile != null && !baseFaresFile.isBlank()) {
+			log.info("Reading zonal base fares from {}...", baseFaresFile);
+			for (CSVRecord row : readTsv(baseFaresFile)) {
+				baseFares[getSlot(zoneIndex, row.get("zone"))] = Double.parseDouble(row.get("base_fare"));
+			}
+		}
+
+		log.info("Reading zonal fare matrix from {}...", fareMatrixFile);
+		for (CSVRecord row : readTsv(fareMatrixFile)) {
+			int from = getSlot(zoneIndex, row.get("from_zone"));
+			int to = getSlot(zoneIndex, row.get("to_zone"));
+			relationFares[from * size + to] = Double.parseDouble(row.get("fare"));
+		}
+		return new ZonalFareMatrix(zoneIndex, baseFares, relationFares);
+	}
+
+	/**
+	 * Returns the relation (i.e. the cell of the matrix) of a trip between the to-nodes of the two links.
+	 */
+	int getRelation(Link fromLink, Link toLink) {
+		return getSlot(zoneIndex.getZone(fromLink)) * size + getSlot(zoneIndex.getZone(toLink));
+	}
+
+	double getFare(int relation) {
+		return fares[relation];
+	}
+
+	double getFare(Link fromLink, Link toLink) {
+		return fares[getRelation(fromLink, toLink)];
+	}
+
+	int getNumberOfRelations() {
+		return fares.length;
+	}
+
+	String getFromZoneId(int relation) {
+		return getZoneId(relation / size);
+	}
+
+	String getToZoneId(int relation) {
+		return getZoneId(relation % size);
+	}
+
+	private String getZoneId(int slot) {
+		return slot == size - 1 ? OUTSIDE : zoneIndex.getZoneId(slot);
+	}
+
+	private int getSlot(int zone) {
+		return zone == FareZoneIndex.NO_ZONE ? size - 1 : zone;
+	}
+
+	private static int getSlot(FareZoneIndex zoneIndex, String zoneId) {
+		if (zoneId.equals(OUTSIDE)) {
+			return zoneIndex.getNumberOfZones();
+		}
+		int zone = zoneIndex.getZone(zoneId);
+		if (zone == FareZoneIndex.NO_ZONE) {
+			throw new IllegalArgumentException("Zone " + zoneId + " of the fare table does not exist in the fare zone shape file.");
+		}
+		return zone;
+	}
+
+	private static Iterable<CSVRecord> readTsv(String path) {
+		try (CSVParser parser = new CSVParser(IOUtils.getBufferedReader(path),
+			CSVFormat.TDF.builder().setHeader().setSkipHeaderRecord(true).build())) {
+			return parser.getRecords();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
@@ -0,0 +1,187 @@
+package org.matsim.rebalancing;
+
+import java.util.Arrays;
+
+/**
+ * Min-cost assignment of rows to columns with capacities (transportation problem with unit supplies) on a dense cost matrix in row-major
+ * order. Each row is assigned to one column, and a column takes at most its capacity of rows. If the capacities add up to less than the
+ * number of rows, the rows that stay unassigned are chosen optimally as well.
+ * <p>
+ * The rows are inserted one after another along shortest augmenting paths (Hungarian method with row and column potentials). A column is
+ * only expanded once it is full, so an insertion usually ends at the first column with spare capacity. Working arrays are kept between
+ * calls, so an instance is not thread-safe.
+ */
+final class MinCostAssignment {
+
+	static final int UNASSIGNED = -1;
+	private static final int NONE = -1;
+
+	private double[] rowPotentials = new double[0];
+	private double[] columnPotentials = new double[0];
+	private double[] minSlack = new double[0];
+	private int[] slackRows = new int[0];
+	private boolean[] visitedColumns = new boolean[0];
+	private int[] treeRows = new int[0];
+	private int[] columnCapacities = new int[0];
+	private int[] columnCounts = new int[0];
+	/**
+	 * Rows assigned to a column as linked list: first row per column, next row per row.
+	 */
+	private int[] firstRows = new int[0];
+	private int[] nextRows = new int[0];
+
+	/**
+	 * Returns the assigned column of each row, or {@link #UNASSIGNED} if the capacities do not suffice for all rows and the row was left out.
+	 * The costs must be finite and not negative.
+	 */
+	int[] solve(double[] costs, int rows, int columns, int[] capacities) {
+		int[] rowColumns = new int[rows];
+		Arrays.fill(rowColumns, UNASSIGNED);
+		if (rows == 0) {
+			return rowColumns;
+		}
+
+		// the rows that do not fit are assigned to an additional column with cost 0, which does not change the optimal choice of the others
+		long totalCapacity = 0;
+		for (int column = 0; column < columns; column++) {
+			totalCapacity += capacities[column];
+		}
+		int dummyColumn = columns;
+		ensureCapacity(rows, columns + 1);
+		System.arraycopy(capacities, 0, columnCapacities, 0, columns);
+		columnCapacities[dummyColumn] = (int) Math.max(0, rows - totalCapacity);
+
+		Arrays.fill(rowPotentials, 0, rows, 0);
+		Arrays.fill(columnPotentials, 0, columns + 1, 0);
+		Arrays.fill(columnCounts, 0, columns + 1, 0);
+		Arrays.fill(firstRows, 0, columns + 1, NONE);
+
+		for (int row = 0; row < rows; row++) {
+			insert(costs, row, columns, rowColumns);
+		}
+
+		for (int row = 0; row < rows; row++) {
+			if (rowColumns[row] == dummyColumn) {
+				rowColumns[row] = UNASSIGNED;
+			}
+		}
+		return rowColumns;
+	}
+
+	/**
+	 * Assigns the row along the shortest augmenting path. Columns that are not full have a potential of 0, so the path ends at the first of
+	 * them that is reached.
+	 */
+	private void insert(double[] costs, int newRow, int columns, int[] rowColumns) {
+		int m = columns + 1;
+		Arrays.fill(minSlack, 0, m, Double.POSITIVE_INFINITY);
+		Arrays.fill(visitedColumns, 0, m, false);
+
+		int treeSize = 0;
+		treeRows[treeSize++] = newRow;
+		int scanned = 0;
+		int column;
+		while (true) {
+			// update the slacks of the unvisited columns with the rows that were added to the tree
+			for (; scanned < treeSize; scanned++) {
+				int row = treeRows[scanned];
+				double rowPotential = rowPotentials[row];
+				int offset = row * columns;
+				for (int j = 0; j < m; j++) {
+					if (!visitedColumns[j]) {
+						double cost = j == columns ? 0 : costs[offset + j];
+						double slack = cost - rowPotential - columnPotentials[j];
+						if (slack < minSlack[j]) {
+							minSlack[j] = slack;
+							slackRows[j] = row;
+						}
+					}
+				}
+			}
+
+			double delta = Double.POSITIVE_INFINITY;
+			column = NONE;
+			for (int j = 0; j < m; j++) {
+				if (!visitedColumns[j] && minSlack[j] < delta) {
+					delta = minSlack[j];
+					column = j;
+				}
+			}
+			if (column == NONE) {
+				// can not happen, as the additional column takes all rows that do not fit elsewhere
+				throw new IllegalStateException("No column left for row " + newRow);
+			}
+
+			for (int i = 0; i < treeSize; i++) {
+				rowPotentials[treeRows[i]] += delta;
+			}
+			for (int j = 0; j < m; j++) {
+				if (visitedColumns[j]) {
+					columnPotentials[j] -= delta;
+				} else {
+					minSlack[j] -= delta;
+				}
+			}
+
+			if (columnCounts[column] < columnCapacities[column]) {
+				break;
+			}
+
+			// the column is full: continue the search from its rows, whose assignment is tight
+			visitedColumns[column] = true;
+			for (int row = firstRows[column]; row != NONE; row = nextRows[row]) {
+				treeRows[treeSize++] = row;
+			}
+		}
+
+		// augment: every row on the path moves to the column it was reached from, only the last column gets one row more
+		columnCounts[column]++;
+		while (true) {
+			int row = slackRows[column];
+			int previousColumn = rowColumns[row];
+			if (previousColumn != UNASSIGNED) {
+				remove(previousColumn, row);
+			}
+			add(column, row);
+			rowColumns[row] = column;
+			if (row == newRow) {
+				break;
+			}
+			column = previousColumn;
+		}
+	}
+
+	private void add(int column, int row) {
+		nextRows[row] = firstRows[column];
+		firstRows[column] = row;
+	}
+
+	private void remove(int column, int row) {
+		if (firstRows[column] == row) {
+			firstRows[column] = nextRows[row];
+			return;
+		}
+		int previous = firstRows[column];
+		while (nextRows[previous] != row) {
+			previous = nextRows[previous];
+		}
+		nextRows[previous] = nextRows[row];
+	}
+
+	private void ensureCapacity(int rows, int columns) {
+		if (rowPotentials.length < rows) {
+			rowPotentials = new double[rows];
+			treeRows = new int[rows];
+			nextRows = new int[rows];
+		}
+		if (columnPotentials.length < columns) {
+			columnPotentials = new double[columns];
+			minSlack = new double[columns];
+			slackRows = new int[columns];
+			visitedColumns = new boolean[columns];
+			columnCapacities = new int[columns];
+			columnCounts = new int[columns];
+			firstRows = new int[columns];
+		}
+	}
+}
@@ -19,6 +19,8 @@
 package org.matsim.rebalancing;
 
 import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.PositiveOrZero;
 import org.matsim.contrib.drt.optimizer.rebalancing.RebalancingParams;
 import org.matsim.core.config.ReflectiveConfigGroup;
 
@@ -36,6 +38,34 @@ public final class WaitingPointBasedRebalancingStrategyParams extends Reflective
 	@NotNull
 	private String waitingPointPath = "";
 
+	@Parameter
+	@Comment("euclidean: straight line distance; freeSpeedTravelTime / congestedTravelTime: network travel time to the waiting point, " +
+		"based on free speed or on the estimated travel times of the drt mode. Travel times are precomputed once per iteration.")
+	@NotNull
+	private WaitingPointDistance waitingPointDistance = WaitingPointDistance.euclidean;
+
+	@Parameter
+	@Comment("Only used for congestedTravelTime. Default: 8:00")
+	@PositiveOrZero
+	private double travelTimeEvaluationTime = 8 * 3600;
+
+	@Parameter
+	@Comment("greedy: each vehicle goes to the nearest waiting point with spare capacity, one after another; " +
+		"optimal: all vehicles to be relocated are assigned at once so that the total distance (see waitingPointDistance) is minimal")
+	@NotNull
+	private WaitingPointAssignment waitingPointAssignment = WaitingPointAssignment.greedy;
+
+	@Parameter
+	@Comment("The waiting point file may contain an optional column 'time' (hh:mm:ss or seconds): the capacity of a link then applies from the " +
+		"time bin of that time on until the next row of the same link. Capacities are looked up per time bin. Default: 1800 (i.e. 30 minutes)")
+	@Positive
+	private double capacityTimeBinSize = 1800;
+
+	@Parameter
+	@Comment("If true, the total capacity of each time bin is redistributed over the waiting points in proportion to the requests that were " +
+		"submitted closest to each waiting point in that time bin of the previous iteration. Default: false")
+	private boolean demandBasedCapacities = false;
+
 	public WaitingPointBasedRebalancingStrategyParams() {
 		super(SET_NAME);
 	}
@@ -47,4 +77,54 @@ public final class WaitingPointBasedRebalancingStrategyParams extends Reflective
 	public void setWaitingPointPath(String waitingPointPath) {
 		this.waitingPointPath = waitingPointPath;
 	}
+
+	public WaitingPointDistance getWaitingPointDistance() {
+		return waitingPointDistance;
+	}
+
+	public void setWaitingPointDistance(WaitingPointDistance waitingPointDistance) {
+		this.waitingPointDistance = waitingPointDistance;
+	}
+
+	public double getTravelTimeEvaluationTime() {
+		return travelTimeEvaluationTime;
+	}
+
+	public void setTravelTimeEvaluationTime(double travelTimeEvaluationTime) {
+		this.travelTimeEvaluationTime = travelTimeEvaluationTime;
+	}
+
+	public WaitingPointAssignment getWaitingPointAssignment() {
+		return waitingPointAssignment;
+	}
+
+	public void setWaitingPointAssignment(WaitingPointAssignment waitingPointAssignment) {
+		this.waitingPointAssignment = waitingPointAssignment;
+	}
+
+	public double getCapacityTimeBinSize() {
+		return capacityTimeBinSize;
+	}
+
+	public void setCapacityTimeBinSize(double capacityTimeBinSize) {
+		this.capacityTimeBinSize = capacityTimeBinSize;
+	}
+
+	public boolean isDemandBasedCapacities() {
+		return demandBasedCapacities;
+	}
+
+	public void setDemandBasedCapacities(boolean demandBasedCapacities) {
+		this.demandBasedCapacities = demandBasedCapacities;
+	}
+
+	/**
+	 * Distance measure used to rank the waiting points.
+	 */
+	public enum WaitingPointDistance {euclidean, freeSpeedTravelTime, congestedTravelTime}
+
+	/**
+	 * Assignment of the idle vehicles to the waiting points.
+	 */
+	public enum WaitingPointAssignment {greedy, optimal}
 }
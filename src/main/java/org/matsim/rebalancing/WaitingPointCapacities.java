@@ -0,0 +1,127 @@
+package org.matsim.rebalancing;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+
+import java.util.Map;
+import java.util.NavigableMap;
+
+/**
+ * Capacities of the waiting points per time bin, stored as one primitive array per bin, so the capacities at a given time are an O(1) lookup.
+ * Times after the last bin use the capacities of the last bin.
+ */
+final class WaitingPointCapacities {
+
+	private final double timeBinSize;
+	/**
+	 * Capacity per time bin and waiting point.
+	 */
+	private final int[][] capacities;
+
+	private WaitingPointCapacities(double timeBinSize, int[][] capacities) {
+		this.timeBinSize = timeBinSize;
+		this.capacities = capacities;
+	}
+
+	/**
+	 * Creates the capacities from the time slices per waiting point link (time bin -> capacity). A capacity applies from its time bin until
+	 * the next time bin given for the same link; before the first given time bin, the capacity of the first one applies.
+	 */
+	static WaitingPointCapacities create(WaitingPointIndex waitingPoints, Map<Id<Link>, NavigableMap<Integer, Integer>> timeSlices,
+										 double timeBinSize) {
+		int numberOfBins = 1;
+		for (NavigableMap<Integer, Integer> slices : timeSlices.values()) {
+			numberOfBins = Math.max(numberOfBins, slices.lastKey() + 1);
+		}
+
+		int[][] capacities = new int[numberOfBins][waitingPoints.size()];
+		for (int point = 0; point < waitingPoints.size(); point++) {
+			NavigableMap<Integer, Integer> slices = timeSlices.get(waitingPoints.getLink(point).getId());
+			for (int bin = 0; bin < numberOfBins; bin++) {
+				Map.Entry<Integer, Integer> slice = slices.floorEntry(bin);
+				capacities[bin][point] = slice == null ? slices.firstEntry().getValue() : slice.getValue();
+			}
+		}
+		return new WaitingPointCapacities(timeBinSize, capacities);
+	}
+
+	/**
+	 * Redistributes the total capacity of each time bin over the waiting points in proportion to the number of requests that have been
+	 * submitted within their catchment (i.e. the area that is closest to the waiting point) in that time bin. Time bins without requests keep
+	 * their capacities.
+	 */
+	WaitingPointCapacities redistribute(double[] requestTimes, int[] requestCatchments) {
+		int numberOfBins = capacities.length;
+		for (double requestTime : requestTimes) {
+			numberOfBins = Math.max(numberOfBins, getBin(requestTime, Integer.MAX_VALUE) + 1);
+		}
+		int numberOfPoints = capacities[0].length;
+
+		int[][] demand = new int[numberOfBins][numberOfPoints];
+		for (int request = 0; request < requestTimes.length; request++) {
+			if (requestCatchments[request] != WaitingPointIndex.NONE) {
+				demand[getBin(requestTimes[request], Integer.MAX_VALUE)][requestCatchments[request]]++;
+			}
+		}
+
+		int[][] redistributed = new int[numberOfBins][];
+		for (int bin = 0; bin < numberOfBins; bin++) {
+			redistributed[bin] = distribute(getCapacities(getBin(bin * timeBinSize)), demand[bin]);
+		}
+		return new WaitingPointCapacities(timeBinSize, redistributed);
+	}
+
+	/**
+	 * Largest remainder distribution of the total capacity in proportion to the demand.
+	 */
+	private static int[] distribute(int[] capacities, int[] demand) {
+		long totalDemand = 0;
+		for (int requests : demand) {
+			totalDemand += requests;
+		}
+		if (totalDemand == 0) {
+			return capacities.clone();
+		}
+		long totalCapacity = 0;
+		for (int capacity : capacities) {
+			totalCapacity += capacity;
+		}
+
+		int[] distributed = new int[capacities.length];
+		long[] remainders = new long[capacities.length];
+		long assigned = 0;
+		for (int point = 0; point < capacities.length; point++) {
+			long share = totalCapacity * demand[point];
+			distributed[point] = (int) (share / totalDemand);
+			remainders[point] = share % totalDemand;
+			assigned += distributed[point];
+		}
+		for (long left = totalCapacity - assigned; left > 0; left--) {
+			int largest = 0;
+			for (int point = 1; point < capacities.length; point++) {
+				if (remainders[point] > remainders[largest]) {
+					largest = point;
+				}
+			}
+			distributed[largest]++;
+			remainders[largest] = -1;
+		}
+		return distributed;
+	}
+
+	int getBin(double time) {
+		return getBin(time, capacities.length - 1);
+	}
+
+	private int getBin(double time, int maxBin) {
+		return (int) Math.min(Math.max(time, 0) / timeBinSize, maxBin);
+	}
+
+	int[] getCapacities(int bin) {
+		return capacities[bin];
+	}
+
+	int getNumberOfBins() {
+		return capacities.length;
+	}
+}
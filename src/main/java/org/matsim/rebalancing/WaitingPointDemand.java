@@ -0,0 +1,55 @@
+package org.matsim.rebalancing;
+
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.matsim.contrib.drt.passenger.events.DrtRequestSubmittedEvent;
+import org.matsim.contrib.drt.passenger.events.DrtRequestSubmittedEventHandler;
+
+/**
+ * Records the submitted requests (origin link and time) of a drt mode, so that the waiting point capacities of an iteration can be derived from
+ * the demand of the previous iteration. The requests are kept in primitive lists over the link id index.
+ */
+final class WaitingPointDemand implements DrtRequestSubmittedEventHandler {
+
+	private final String mode;
+
+	private IntArrayList fromLinks = new IntArrayList();
+	private DoubleArrayList times = new DoubleArrayList();
+	private int[] previousFromLinks = new int[0];
+	private double[] previousTimes = new double[0];
+
+	WaitingPointDemand(String mode) {
+		this.mode = mode;
+	}
+
+	@Override
+	public void handleEvent(DrtRequestSubmittedEvent event) {
+		if (event.getMode().equals(mode)) {
+			fromLinks.add(event.getFromLinkId().index());
+			times.add(event.getTime());
+		}
+	}
+
+	@Override
+	public void reset(int iteration) {
+		// called at the beginning of each iteration, i.e. the requests recorded so far are the ones of the previous iteration
+		previousFromLinks = fromLinks.toIntArray();
+		previousTimes = times.toDoubleArray();
+		fromLinks = new IntArrayList();
+		times = new DoubleArrayList();
+	}
+
+	/**
+	 * Link id indices of the origins of the requests submitted in the previous iteration.
+	 */
+	int[] getPreviousFromLinks() {
+		return previousFromLinks;
+	}
+
+	/**
+	 * Submission times of the requests submitted in the previous iteration.
+	 */
+	double[] getPreviousTimes() {
+		return previousTimes;
+	}
+}
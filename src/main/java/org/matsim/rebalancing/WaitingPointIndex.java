@@ -0,0 +1,229 @@
+package org.matsim.rebalancing;
+
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Waiting points with their capacity and current occupancy, backed by a kd-tree over the coordinates of the waiting points (i.e. the to-nodes
+ * of their links). Each node of the tree keeps the number of waiting points with spare capacity in its subtree, so that the query for the
+ * nearest waiting point with spare capacity skips full regions. Occupancy updates are O(log n).
+ * Not thread-safe, it is meant to be used by the rebalancing strategy on the simulation thread.
+ */
+final class WaitingPointIndex {
+
+	static final int NONE = -1;
+
+	private final Link[] links;
+	private final double[] xs;
+	private final double[] ys;
+	private final int[] capacities;
+	private final int[] occupancies;
+	private final Map<Id<Link>, Integer> pointByLink = new HashMap<>();
+
+	/**
+	 * The kd-tree is stored implicitly: a subtree covers a range [from, to) of this array and its root is the median of that range.
+	 */
+	private final int[] tree;
+	/**
+	 * Position of each waiting point in the tree array.
+	 */
+	private final int[] positions;
+	/**
+	 * Number of waiting points with spare capacity in the subtree rooted at the given tree position.
+	 */
+	private final int[] availableInSubtree;
+
+	private int searchResult;
+	private double searchDistanceSquared;
+
+	WaitingPointIndex(Network network, Map<Id<Link>, Integer> capacities) {
+		int size = capacities.size();
+		this.links = new Link[size];
+		this.xs = new double[size];
+		this.ys = new double[size];
+		this.capacities = new int[size];
+		this.occupancies = new int[size];
+
+		int point = 0;
+		for (Map.Entry<Id<Link>, Integer> entry : capacities.entrySet()) {
+			Link link = network.getLinks().get(entry.getKey());
+			links[point] = link;
+			xs[point] = link.getToNode().getCoord().getX();
+			ys[point] = link.getToNode().getCoord().getY();
+			this.capacities[point] = entry.getValue();
+			pointByLink.put(link.getId(), point);
+			point++;
+		}
+
+		this.tree = new int[size];
+		for (int i = 0; i < size; i++) {
+			tree[i] = i;
+		}
+		build(0, size, 0);
+
+		this.positions = new int[size];
+		for (int pos = 0; pos < size; pos++) {
+			positions[tree[pos]] = pos;
+		}
+
+		this.availableInSubtree = new int[size];
+		resetOccupancies();
+	}
+
+	private void build(int from, int to, int depth) {
+		if (to - from <= 1) {
+			return;
+		}
+		double[] coords = depth % 2 == 0 ? xs : ys;
+		IntArrays.quickSort(tree, from, to, (a, b) -> Double.compare(coords[a], coords[b]));
+		int mid = (from + to) >>> 1;
+		build(from, mid, depth + 1);
+		build(mid + 1, to, depth + 1);
+	}
+
+	int size() {
+		return links.length;
+	}
+
+	/**
+	 * Returns the waiting point on the given link, or {@link #NONE}.
+	 */
+	int getPoint(Id<Link> linkId) {
+		Integer point = pointByLink.get(linkId);
+		return point == null ? NONE : point;
+	}
+
+	Link getLink(int point) {
+		return links[point];
+	}
+
+	int getCapacity(int point) {
+		return capacities[point];
+	}
+
+	int getOccupancy(int point) {
+		return occupancies[point];
+	}
+
+	boolean hasSpareCapacity(int point) {
+		return occupancies[point] < capacities[point];
+	}
+
+	void increment(int point) {
+		setOccupancy(point, occupancies[point] + 1);
+	}
+
+	void decrement(int point) {
+		setOccupancy(point, occupancies[point] - 1);
+	}
+
+	/**
+	 * Replaces the capacities of all waiting points, e.g. at the beginning of a new time bin. The occupancies are kept.
+	 */
+	void setCapacities(int[] capacities) {
+		System.arraycopy(capacities, 0, this.capacities, 0, this.capacities.length);
+		initAvailable(0, links.length);
+	}
+
+	void resetOccupancies() {
+		for (int point = 0; point < links.length; point++) {
+			occupancies[point] = 0;
+		}
+		initAvailable(0, links.length);
+	}
+
+	private int initAvailable(int from, int to) {
+		if (from >= to) {
+			return 0;
+		}
+		int mid = (from + to) >>> 1;
+		availableInSubtree[mid] = initAvailable(from, mid) + initAvailable(mid + 1, to) + (hasSpareCapacity(tree[mid]) ? 1 : 0);
+		return availableInSubtree[mid];
+	}
+
+	private void setOccupancy(int point, int occupancy) {
+		boolean wasAvailable = hasSpareCapacity(point);
+		occupancies[point] = occupancy;
+		boolean isAvailable = hasSpareCapacity(point);
+		if (wasAvailable != isAvailable) {
+			updateAvailable(positions[point], isAvailable ? 1 : -1);
+		}
+	}
+
+	private void updateAvailable(int position, int delta) {
+		int from = 0;
+		int to = links.length;
+		while (from < to) {
+			int mid = (from + to) >>> 1;
+			availableInSubtree[mid] += delta;
+			if (position == mid) {
+				return;
+			} else if (position < mid) {
+				to = mid;
+			} else {
+				from = mid + 1;
+			}
+		}
+	}
+
+	/**
+	 * Returns the waiting point with spare capacity that is closest (euclidean distance) to the coordinate, or {@link #NONE}.
+	 */
+	int findNearestAvailable(Coord coord) {
+		return findNearest(coord, true);
+	}
+
+	/**
+	 * Returns the waiting point that is closest (euclidean distance) to the coordinate, regardless of its occupancy, or {@link #NONE}.
+	 */
+	int findNearest(Coord coord) {
+		return findNearest(coord, false);
+	}
+
+	private int findNearest(Coord coord, boolean availableOnly) {
+		searchResult = NONE;
+		searchDistanceSquared = Double.POSITIVE_INFINITY;
+		search(0, links.length, 0, coord.getX(), coord.getY(), availableOnly);
+		return searchResult;
+	}
+
+	private void search(int from, int to, int depth, double x, double y, boolean availableOnly) {
+		if (from >= to) {
+			return;
+		}
+		int mid = (from + to) >>> 1;
+		if (availableOnly && availableInSubtree[mid] == 0) {
+			return;
+		}
+
+		int point = tree[mid];
+		if (!availableOnly || hasSpareCapacity(point)) {
+			double dx = x - xs[point];
+			double dy = y - ys[point];
+			double distanceSquared = dx * dx + dy * dy;
+			if (distanceSquared < searchDistanceSquared) {
+				searchResult = point;
+				searchDistanceSquared = distanceSquared;
+			}
+		}
+
+		double diff = depth % 2 == 0 ? x - xs[point] : y - ys[point];
+		if (diff < 0) {
+			search(from, mid, depth + 1, x, y, availableOnly);
+			if (diff * diff < searchDistanceSquared) {
+				search(mid + 1, to, depth + 1, x, y, availableOnly);
+			}
+		} else {
+			search(mid + 1, to, depth + 1, x, y, availableOnly);
+			if (diff * diff < searchDistanceSquared) {
+				search(from, mid, depth + 1, x, y, availableOnly);
+			}
+		}
+	}
+}
@@ -0,0 +1,37 @@
+package org.matsim.rebalancing;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event for one call of the waiting point based rebalancing strategy. The duration of the event is the wall time of the call.
+ * Record e.g. with {@code -XX:StartFlightRecording:filename=rebalancing.jfr}.
+ */
+@Name("org.matsim.rebalancing.WaitingPointRebalancing")
+@Label("Waiting Point Rebalancing")
+@Category({"MATSim", "DRT"})
+@Description("Calculation of the relocations of idle vehicles to waiting points")
+@StackTrace(false)
+final class WaitingPointRebalancingEvent extends Event {
+
+	@Label("Mode")
+	String mode;
+
+	@Label("Simulation Time")
+	@Description("Simulation time of the rebalancing in seconds")
+	double simulationTime;
+
+	@Label("Idle Vehicles")
+	int idleVehicles;
+
+	@Label("Relocations")
+	int relocations;
+
+	@Label("Failures")
+	@Description("Vehicles that could not be relocated, because no waiting point with spare capacity was found")
+	int failures;
+}
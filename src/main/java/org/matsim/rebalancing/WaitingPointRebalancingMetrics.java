@@ -0,0 +1,149 @@
+package org.matsim.rebalancing;
+
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.core.controler.OutputDirectoryHierarchy;
+import org.matsim.core.controler.events.IterationEndsEvent;
+import org.matsim.core.controler.listener.IterationEndsListener;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+/**
+ * Collects metrics of the waiting point based rebalancing strategy over an iteration and writes them to the iteration output folder:
+ * <ul>
+ *     <li>{@code <mode>_waiting_point_rebalancing.csv}: wall time, idle vehicles, relocations, failures and relocation distance per call</li>
+ *     <li>{@code <mode>_waiting_point_relocation_distances.csv}: distribution of the (euclidean) relocation distances</li>
+ *     <li>{@code <mode>_waiting_point_occupancy.csv}: capacity and occupancy of every waiting point at every call with idle vehicles</li>
+ * </ul>
+ * The values are kept in primitive lists until the end of the iteration, so recording does not produce garbage per call.
+ */
+final class WaitingPointRebalancingMetrics implements IterationEndsListener {
+
+	static final double DISTANCE_BIN_SIZE = 500;
+
+	private final String mode;
+	private final OutputDirectoryHierarchy outputDirectoryHierarchy;
+
+	private final DoubleArrayList callTimes = new DoubleArrayList();
+	private final LongArrayList callWallTimes = new LongArrayList();
+	private final IntArrayList callIdleVehicles = new IntArrayList();
+	private final IntArrayList callRelocations = new IntArrayList();
+	private final IntArrayList callFailures = new IntArrayList();
+	private final DoubleArrayList callDistances = new DoubleArrayList();
+
+	private final DoubleArrayList relocationDistances = new DoubleArrayList();
+
+	private final DoubleArrayList occupancyTimes = new DoubleArrayList();
+	private final IntArrayList occupancyLinks = new IntArrayList();
+	private final IntArrayList occupancyCapacities = new IntArrayList();
+	private final IntArrayList occupancies = new IntArrayList();
+
+	private double distanceOfCurrentCall;
+
+	WaitingPointRebalancingMetrics(String mode, OutputDirectoryHierarchy outputDirectoryHierarchy) {
+		this.mode = mode;
+		this.outputDirectoryHierarchy = outputDirectoryHierarchy;
+	}
+
+	void recordRelocation(double distance) {
+		relocationDistances.add(distance);
+		distanceOfCurrentCall += distance;
+	}
+
+	void recordCall(double time, long wallTimeNanos, int idleVehicles, int relocations, int failures) {
+		callTimes.add(time);
+		callWallTimes.add(wallTimeNanos);
+		callIdleVehicles.add(idleVehicles);
+		callRelocations.add(relocations);
+		callFailures.add(failures);
+		callDistances.add(distanceOfCurrentCall);
+		distanceOfCurrentCall = 0;
+	}
+
+	void recordOccupancy(double time, WaitingPointIndex waitingPoints) {
+		for (int point = 0; point < waitingPoints.size(); point++) {
+			occupancyTimes.add(time);
+			occupancyLinks.add(waitingPoints.getLink(point).getId().index());
+			occupancyCapacities.add(waitingPoints.getCapacity(point));
+			occupancies.add(waitingPoints.getOccupancy(point));
+		}
+	}
+
+	@Override
+	public void notifyIterationEnds(IterationEndsEvent event) {
+		try {
+			writeCalls(event.getIteration());
+			writeRelocationDistances(event.getIteration());
+			writeOccupancies(event.getIteration());
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		clear();
+	}
+
+	private void writeCalls(int iteration) throws IOException {
+		try (CSVPrinter printer = createPrinter(iteration, "waiting_point_rebalancing.csv")) {
+			printer.printRecord("time", "wall_time_ms", "idle_vehicles", "relocations", "failures", "relocation_distance");
+			for (int call = 0; call < callTimes.size(); call++) {
+				printer.printRecord(callTimes.getDouble(call), callWallTimes.getLong(call) / 1e6, callIdleVehicles.getInt(call),
+					callRelocations.getInt(call), callFailures.getInt(call), callDistances.getDouble(call));
+			}
+		}
+	}
+
+	private void writeRelocationDistances(int iteration) throws IOException {
+		int[] histogram = new int[1];
+		for (int i = 0; i < relocationDistances.size(); i++) {
+			int bin = (int) (relocationDistances.getDouble(i) / DISTANCE_BIN_SIZE);
+			if (bin >= histogram.length) {
+				histogram = Arrays.copyOf(histogram, bin + 1);
+			}
+			histogram[bin]++;
+		}
+
+		try (CSVPrinter printer = createPrinter(iteration, "waiting_point_relocation_distances.csv")) {
+			printer.printRecord("distance_from", "distance_to", "relocations");
+			for (int bin = 0; bin < histogram.length; bin++) {
+				printer.printRecord(bin * DISTANCE_BIN_SIZE, (bin + 1) * DISTANCE_BIN_SIZE, histogram[bin]);
+			}
+		}
+	}
+
+	private void writeOccupancies(int iteration) throws IOException {
+		try (CSVPrinter printer = createPrinter(iteration, "waiting_point_occupancy.csv")) {
+			printer.printRecord("time", "link_id", "capacity", "occupancy");
+			for (int i = 0; i < occupancyTimes.size(); i++) {
+				printer.printRecord(occupancyTimes.getDouble(i), Id.get(occupancyLinks.getInt(i), Link.class), occupancyCapacities.getInt(i),
+					occupancies.getInt(i));
+			}
+		}
+	}
+
+	private CSVPrinter createPrinter(int iteration, String fileName) throws IOException {
+		String file = outputDirectoryHierarchy.getIterationFilename(iteration, mode + "_" + fileName);
+		return new CSVPrinter(new FileWriter(file), CSVFormat.DEFAULT);
+	}
+
+	private void clear() {
+		callTimes.clear();
+		callWallTimes.clear();
+		callIdleVehicles.clear();
+		callRelocations.clear();
+		callFailures.clear();
+		callDistances.clear();
+		relocationDistances.clear();
+		occupancyTimes.clear();
+		occupancyLinks.clear();
+		occupancyCapacities.clear();
+		occupancies.clear();
+		distanceOfCurrentCall = 0;
+	}
+}
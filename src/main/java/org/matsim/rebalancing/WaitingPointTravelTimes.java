@@ -0,0 +1,159 @@
+package org.matsim.rebalancing;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.router.util.TravelTime;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Network travel times from every node to every waiting point. For each waiting point, a backwards least-cost-path tree is computed once
+ * (i.e. once per iteration, as the strategy lives in the mobsim scope) and stored as a primitive array over the node index. Finding the
+ * nearest waiting point of a vehicle is then a scan over the waiting points without any routing on the simulation thread.
+ */
+final class WaitingPointTravelTimes {
+
+	private static final Logger log = LogManager.getLogger(WaitingPointTravelTimes.class);
+
+	/**
+	 * Travel time from the node (by node index) to the end of the waiting point link, per waiting point. Unreachable nodes are infinite.
+	 */
+	private final float[][] travelTimes;
+
+	WaitingPointTravelTimes(WaitingPointIndex waitingPoints, TravelTime travelTime, double time) {
+		log.info("Computing travel times to {} waiting points...", waitingPoints.size());
+		int numberOfNodes = Id.getNumberOfIds(Node.class);
+		this.travelTimes = new float[waitingPoints.size()][];
+		IntStream.range(0, waitingPoints.size()).parallel().forEach(point ->
+			travelTimes[point] = calcTravelTimesTo(waitingPoints.getLink(point), travelTime, time, numberOfNodes));
+	}
+
+	/**
+	 * Returns the waiting point with spare capacity with the shortest travel time from the node, or {@link WaitingPointIndex#NONE}.
+	 */
+	int findNearestAvailable(WaitingPointIndex waitingPoints, Node node) {
+		int nodeIdx = node.getId().index();
+		int nearest = WaitingPointIndex.NONE;
+		float shortestTravelTime = Float.POSITIVE_INFINITY;
+		for (int point = 0; point < travelTimes.length; point++) {
+			float pointTravelTime = getTravelTime(point, nodeIdx);
+			if (pointTravelTime < shortestTravelTime && waitingPoints.hasSpareCapacity(point)) {
+				nearest = point;
+				shortestTravelTime = pointTravelTime;
+			}
+		}
+		return nearest;
+	}
+
+	/**
+	 * Returns the travel time from the node to the waiting point, infinite if the waiting point cannot be reached.
+	 */
+	float getTravelTime(int point, Node node) {
+		return getTravelTime(point, node.getId().index());
+	}
+
+	private float getTravelTime(int point, int nodeIdx) {
+		return nodeIdx < travelTimes[point].length ? travelTimes[point][nodeIdx] : Float.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * Backwards Dijkstra from the waiting point link, i.e. over the in-links of the nodes.
+	 */
+	private static float[] calcTravelTimesTo(Link waitingPointLink, TravelTime travelTime, double time, int numberOfNodes) {
+		float[] times = new float[numberOfNodes];
+		Arrays.fill(times, Float.POSITIVE_INFINITY);
+
+		float linkTravelTime = (float) travelTime.getLinkTravelTime(waitingPointLink, time, null, null);
+		Node start = waitingPointLink.getFromNode();
+		times[start.getId().index()] = linkTravelTime;
+
+		NodeHeap heap = new NodeHeap();
+		heap.add(start, linkTravelTime);
+		while (!heap.isEmpty()) {
+			float nodeTime = heap.peekTime();
+			Node node = heap.poll();
+			if (nodeTime > times[node.getId().index()]) {
+				// outdated entry
+				continue;
+			}
+			for (Link inLink : node.getInLinks().values()) {
+				Node fromNode = inLink.getFromNode();
+				float fromNodeTime = (float) (nodeTime + travelTime.getLinkTravelTime(inLink, time, null, null));
+				if (fromNodeTime < times[fromNode.getId().index()]) {
+					times[fromNode.getId().index()] = fromNodeTime;
+					heap.add(fromNode, fromNodeTime);
+				}
+			}
+		}
+		return times;
+	}
+
+	/**
+	 * Minimal binary heap of nodes by travel time. Decreasing a key inserts the node again, outdated entries are skipped when polled.
+	 */
+	private static final class NodeHeap {
+		private Node[] nodes = new Node[64];
+		private float[] keys = new float[64];
+		private int size;
+
+		boolean isEmpty() {
+			return size == 0;
+		}
+
+		float peekTime() {
+			return keys[0];
+		}
+
+		void add(Node node, float key) {
+			if (size == nodes.length) {
+				nodes = Arrays.copyOf(nodes, size * 2);
+				keys = Arrays.copyOf(keys, size * 2);
+			}
+			int i = size++;
+			while (i > 0) {
+				int parent = (i - 1) >>> 1;
+				if (keys[parent] <= key) {
+					break;
+				}
+				nodes[i] = nodes[parent];
+				keys[i] = keys[parent];
+				i = parent;
+			}
+			nodes[i] = node;
+			keys[i] = key;
+		}
+
+		Node poll() {
+			Node result = nodes[0];
+			size--;
+			Node last = nodes[size];
+			float lastKey = keys[size];
+			nodes[size] = null;
+			int i = 0;
+			while (true) {
+				int child = 2 * i + 1;
+				if (child >= size) {
+					break;
+				}
+				if (child + 1 < size && keys[child + 1] < keys[child]) {
+					child++;
+				}
+				if (keys[child] >= lastKey) {
+					break;
+				}
+				nodes[i] = nodes[child];
+				keys[i] = keys[child];
+				i = child;
+			}
+			if (size > 0) {
+				nodes[i] = last;
+				keys[i] = lastKey;
+			}
+			return result;
+		}
+	}
+}
@@ -29,6 +29,8 @@ import org.matsim.contrib.drt.run.DrtConfigGroup;
 import org.matsim.contrib.dvrp.fleet.Fleet;
 import org.matsim.contrib.dvrp.run.AbstractDvrpModeModule;
 import org.matsim.contrib.dvrp.run.AbstractDvrpModeQSimModule;
+import org.matsim.core.controler.OutputDirectoryHierarchy;
+import org.matsim.core.router.util.TravelTime;
 
 import java.io.IOException;
 
@@ -39,12 +41,22 @@ import java.io.IOException;
 public class WaitingPointsBasedRebalancingModule extends AbstractDvrpModeModule {
 	private static final Logger log = LogManager.getLogger(WaitingPointsBasedRebalancingStrategy.class);
 	private final DrtConfigGroup drtCfg;
-	private final String waitingPointsPath;
+	private final WaitingPointBasedRebalancingStrategyParams waitingPointParams;
 
 	public WaitingPointsBasedRebalancingModule(DrtConfigGroup drtCfg, String waitingPointsPath) {
+		this(drtCfg, createParams(waitingPointsPath));
+	}
+
+	public WaitingPointsBasedRebalancingModule(DrtConfigGroup drtCfg, WaitingPointBasedRebalancingStrategyParams waitingPointParams) {
 		super(drtCfg.getMode());
 		this.drtCfg = drtCfg;
-		this.waitingPointsPath = waitingPointsPath;
+		this.waitingPointParams = waitingPointParams;
+	}
+
+	private static WaitingPointBasedRebalancingStrategyParams createParams(String waitingPointsPath) {
+		WaitingPointBasedRebalancingStrategyParams params = new WaitingPointBasedRebalancingStrategyParams();
+		params.setWaitingPointPath(waitingPointsPath);
+		return params;
 	}
 
 	@Override
@@ -52,14 +64,26 @@ public class WaitingPointsBasedRebalancingModule extends AbstractDvrpModeModule
 		log.info("Waiting-points-based rebalancing strategy is now being installed!");
 		RebalancingParams generalParams = drtCfg.getRebalancingParams().orElseThrow();
 
+		bindModal(WaitingPointRebalancingMetrics.class).toProvider(modalProvider(
+			getter -> new WaitingPointRebalancingMetrics(getMode(), getter.get(OutputDirectoryHierarchy.class)))).asEagerSingleton();
+		addControlerListenerBinding().to(modalKey(WaitingPointRebalancingMetrics.class));
+
+		if (waitingPointParams.isDemandBasedCapacities()) {
+			// the requests are recorded over the whole run, so that each iteration can use the demand of the previous one
+			bindModal(WaitingPointDemand.class).toProvider(modalProvider(getter -> new WaitingPointDemand(getMode()))).asEagerSingleton();
+			addEventHandlerBinding().to(modalKey(WaitingPointDemand.class));
+		}
+
 		installQSimModule(new AbstractDvrpModeQSimModule(getMode()) {
 			@Override
 			protected void configureQSim() {
 				bindModal(WaitingPointsBasedRebalancingStrategy.class).toProvider(modalProvider(
 					getter -> {
 						try {
-							return new WaitingPointsBasedRebalancingStrategy(getter.getModal(Network.class),
-								waitingPointsPath, generalParams, getter.getModal(Fleet.class));
+							return new WaitingPointsBasedRebalancingStrategy(getMode(), getter.getModal(Network.class),
+								waitingPointParams, generalParams, getter.getModal(Fleet.class), getter.getModal(TravelTime.class),
+								waitingPointParams.isDemandBasedCapacities() ? getter.getModal(WaitingPointDemand.class) : null,
+								getter.getModal(WaitingPointRebalancingMetrics.class));
 						} catch (IOException e) {
 							throw new RuntimeException(e);
 						}
@@ -67,6 +91,8 @@ public class WaitingPointsBasedRebalancingModule extends AbstractDvrpModeModule
 
 				// binding event handler
 				bindModal(RebalancingStrategy.class).to(modalKey(WaitingPointsBasedRebalancingStrategy.class));
+				// task and scheduling events keep the occupancy of the waiting points up to date
+				addMobsimScopeEventHandlerBinding().to(modalKey(WaitingPointsBasedRebalancingStrategy.class));
 			}
 		});
 	}
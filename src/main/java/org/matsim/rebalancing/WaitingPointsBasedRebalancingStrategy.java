@@ -3,7 +3,6 @@ package org.matsim.rebalancing;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVRecord;
-import org.apache.commons.lang.mutable.MutableInt;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.matsim.api.core.v01.Id;
@@ -13,12 +12,23 @@ import org.matsim.contrib.drt.optimizer.rebalancing.RebalancingParams;
 import org.matsim.contrib.drt.optimizer.rebalancing.RebalancingStrategy;
 import org.matsim.contrib.dvrp.fleet.DvrpVehicle;
 import org.matsim.contrib.dvrp.fleet.Fleet;
+import org.matsim.contrib.dvrp.passenger.PassengerRequestScheduledEvent;
+import org.matsim.contrib.dvrp.passenger.PassengerRequestScheduledEventHandler;
 import org.matsim.contrib.dvrp.schedule.Schedule;
 import org.matsim.contrib.dvrp.schedule.Schedules;
 import org.matsim.contrib.dvrp.schedule.StayTask;
 import org.matsim.contrib.dvrp.schedule.Task;
+import org.matsim.contrib.dvrp.vrpagent.TaskEndedEvent;
+import org.matsim.contrib.dvrp.vrpagent.TaskEndedEventHandler;
+import org.matsim.contrib.dvrp.vrpagent.TaskStartedEvent;
+import org.matsim.contrib.dvrp.vrpagent.TaskStartedEventHandler;
+import org.matsim.core.events.MobsimScopeEventHandler;
+import org.matsim.core.router.util.TravelTime;
+import org.matsim.core.trafficmonitoring.FreeSpeedTravelTime;
 import org.matsim.core.utils.geometry.CoordUtils;
+import org.matsim.core.utils.misc.Time;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
@@ -28,33 +38,105 @@ import java.util.stream.Stream;
 
 /**
  * The waiting point based rebalancing strategy will relocate vehicles to nearest waiting point that still has capacity when it becomes idle.
+ * The occupancy of the waiting points is maintained incrementally. When relocations are calculated, the schedules of the given idle vehicles
+ * and of all vehicles that are counted at a waiting point are read again, as requests may have been inserted in the same mobsim step and
+ * the events of that step may not be processed yet. Other vehicles are only inspected again once a task or scheduling event has marked
+ * them, e.g. when they start the drive to a final stay at a waiting point.
  * @author Chengqi Lu
  */
-class WaitingPointsBasedRebalancingStrategy implements RebalancingStrategy {
+class WaitingPointsBasedRebalancingStrategy implements RebalancingStrategy, MobsimScopeEventHandler, TaskStartedEventHandler,
+	TaskEndedEventHandler, PassengerRequestScheduledEventHandler {
 
+	private final String mode;
 	private final Network network;
 	private final RebalancingParams params;
 	private final Fleet fleet;
 	private final Map<Id<Link>, Integer> waitingPointsCapcityMap = new HashMap<>();
+	/**
+	 * Capacity per time bin (value) from the given time bin (key) on, per waiting point link.
+	 */
+	private final Map<Id<Link>, NavigableMap<Integer, Integer>> waitingPointsCapacitySlices = new HashMap<>();
+	private final WaitingPointIndex waitingPoints;
+	private final WaitingPointCapacities capacities;
+	private int capacityBin = -1;
+	private final WaitingPointRebalancingMetrics metrics;
+	/**
+	 * Vehicles that could not be relocated in the current call.
+	 */
+	private int failures;
+	@Nullable
+	private final WaitingPointTravelTimes waitingPointTravelTimes;
+	/**
+	 * Solver for the optimal assignment, null for the greedy assignment.
+	 */
+	@Nullable
+	private final MinCostAssignment minCostAssignment;
+	/**
+	 * Buffers of the optimal assignment, kept between calls: costs per vehicle and waiting point, waiting point and spare capacity per column.
+	 */
+	private double[] assignmentCosts = new double[0];
+	private int[] assignmentPoints = new int[0];
+	private int[] assignmentCapacities = new int[0];
 	private static final Logger log = LogManager.getLogger(WaitingPointsBasedRebalancingStrategy.class);
+	private static final double UNREACHABLE_COST = 1e9;
+	private static final int UNKNOWN_CATCHMENT = -2;
 
-	WaitingPointsBasedRebalancingStrategy(Network network, String waitingPointsPath, RebalancingParams params, Fleet fleet) throws IOException {
+	/**
+	 * Fleet vehicles and the waiting point they are currently counted at, by vehicle id index.
+	 */
+	private final DvrpVehicle[] vehicles;
+	private final int[] vehicleWaitingPoints;
+	/**
+	 * Vehicles whose schedule has changed since the last update of the occupancy, by vehicle id index.
+	 */
+	private final BitSet changedVehicles = new BitSet();
+	/**
+	 * Vehicles that are counted at a waiting point, by vehicle id index.
+	 */
+	private final BitSet countedVehicles = new BitSet();
+	private final BitSet vehiclesToUpdate = new BitSet();
+
+	WaitingPointsBasedRebalancingStrategy(String mode, Network network, WaitingPointBasedRebalancingStrategyParams waitingPointParams,
+										  RebalancingParams params, Fleet fleet, TravelTime travelTime, @Nullable WaitingPointDemand demand,
+										  WaitingPointRebalancingMetrics metrics) throws IOException {
+		this.mode = mode;
 		this.network = network;
 		this.params = params;
 		this.fleet = fleet;
-		initialize(waitingPointsPath);
+		this.metrics = metrics;
+		initialize(waitingPointParams.getWaitingPointPath(), waitingPointParams.getCapacityTimeBinSize());
+		this.waitingPoints = new WaitingPointIndex(network, waitingPointsCapcityMap);
+		this.capacities = createCapacities(waitingPointParams.getCapacityTimeBinSize(), demand);
+
+		this.waitingPointTravelTimes = switch (waitingPointParams.getWaitingPointDistance()) {
+			case euclidean -> null;
+			case freeSpeedTravelTime -> new WaitingPointTravelTimes(waitingPoints, new FreeSpeedTravelTime(), 0);
+			case congestedTravelTime -> new WaitingPointTravelTimes(waitingPoints, travelTime, waitingPointParams.getTravelTimeEvaluationTime());
+		};
+		this.minCostAssignment = waitingPointParams.getWaitingPointAssignment() == WaitingPointBasedRebalancingStrategyParams.WaitingPointAssignment.optimal ?
+			new MinCostAssignment() : null;
+
+		this.vehicles = new DvrpVehicle[Id.getNumberOfIds(DvrpVehicle.class)];
+		this.vehicleWaitingPoints = new int[vehicles.length];
+		Arrays.fill(vehicleWaitingPoints, WaitingPointIndex.NONE);
+		for (DvrpVehicle vehicle : fleet.getVehicles().values()) {
+			vehicles[vehicle.getId().index()] = vehicle;
+			changedVehicles.set(vehicle.getId().index());
+		}
 	}
 
-	private void initialize(String waitingPointsPath) throws IOException {
+	private void initialize(String waitingPointsPath, double timeBinSize) throws IOException {
 		if (!waitingPointsPath.isEmpty()) {
-			// read the waiting point locations from the provided tsv file: link_id	capacity
+			// read the waiting point locations from the provided tsv file: link_id	capacity	[time]
 			log.info("Reading waiting points from the file...");
 			try (CSVParser parser = new CSVParser(Files.newBufferedReader(Path.of(waitingPointsPath), StandardCharsets.UTF_8),
 				CSVFormat.TDF.builder().setHeader().setSkipHeaderRecord(true).build())) {
+				boolean timeSliced = parser.getHeaderMap().containsKey("time");
 				for (CSVRecord csvRecord : parser) {
 					Link waitingPointLink = network.getLinks().get(Id.createLinkId(csvRecord.get("link_id")));
 					Integer capacity = Integer.parseInt(csvRecord.get("capacity"));
-					waitingPointsCapcityMap.put(waitingPointLink.getId(), capacity);
+					int timeBin = timeSliced ? (int) (Time.parseTime(csvRecord.get("time")) / timeBinSize) : 0;
+					waitingPointsCapacitySlices.computeIfAbsent(waitingPointLink.getId(), linkId -> new TreeMap<>()).put(timeBin, capacity);
 				}
 			}
 		} else {
@@ -63,84 +145,282 @@ class WaitingPointsBasedRebalancingStrategy implements RebalancingStrategy {
 			log.info("No waiting points file is provided. Assume all the starting locations of vehicles to be waiting points...");
 			for (DvrpVehicle vehicle : fleet.getVehicles().values()) {
 				Id<Link> startLinkId = vehicle.getStartLink().getId();
-				int currentCount = waitingPointsCapcityMap.getOrDefault(startLinkId, 0);
-				waitingPointsCapcityMap.put(startLinkId, currentCount + 1);
+				waitingPointsCapacitySlices.computeIfAbsent(startLinkId, linkId -> new TreeMap<>()).merge(0, 1, Integer::sum);
 			}
 		}
+		waitingPointsCapacitySlices.forEach((linkId, slices) -> waitingPointsCapcityMap.put(linkId, slices.firstEntry().getValue()));
+	}
+
+	private WaitingPointCapacities createCapacities(double timeBinSize, @Nullable WaitingPointDemand demand) {
+		WaitingPointCapacities waitingPointCapacities = WaitingPointCapacities.create(waitingPoints, waitingPointsCapacitySlices, timeBinSize);
+		if (demand == null || demand.getPreviousTimes().length == 0) {
+			return waitingPointCapacities;
+		}
+
+		// the catchment of a request is the waiting point closest to its origin, computed once per link
+		int[] linkCatchments = new int[Id.getNumberOfIds(Link.class)];
+		Arrays.fill(linkCatchments, UNKNOWN_CATCHMENT);
+		int[] fromLinks = demand.getPreviousFromLinks();
+		int[] requestCatchments = new int[fromLinks.length];
+		for (int request = 0; request < fromLinks.length; request++) {
+			int linkIdx = fromLinks[request];
+			if (linkCatchments[linkIdx] == UNKNOWN_CATCHMENT) {
+				Link fromLink = network.getLinks().get(Id.get(linkIdx, Link.class));
+				linkCatchments[linkIdx] = fromLink == null ? WaitingPointIndex.NONE : waitingPoints.findNearest(fromLink.getToNode().getCoord());
+			}
+			requestCatchments[request] = linkCatchments[linkIdx];
+		}
+		log.info("Deriving the waiting point capacities from {} requests of the previous iteration...", fromLinks.length);
+		return waitingPointCapacities.redistribute(demand.getPreviousTimes(), requestCatchments);
 	}
 
 	@Override
 	public List<Relocation> calcRelocations(Stream<? extends DvrpVehicle> rebalancableVehicles, double time) {
-		List<Relocation> relocations = new ArrayList<>();
+		WaitingPointRebalancingEvent jfrEvent = new WaitingPointRebalancingEvent();
+		jfrEvent.begin();
+		long startTime = System.nanoTime();
+
 		List<? extends DvrpVehicle> idleVehicles = rebalancableVehicles.filter(v -> v.getServiceEndTime() > time + params.minServiceTime).toList();
-		if (!idleVehicles.isEmpty()) {
+		failures = 0;
+		List<Relocation> relocations;
+		if (idleVehicles.isEmpty()) {
+			relocations = new ArrayList<>();
+		} else {
 			// when there are idling vehicles that can be rebalanced
-			// we first identify the distribution of the vehicles
-			Map<Id<Link>, MutableInt> waitingPointsOccupancyMap = new HashMap<>();
-			Map<Id<DvrpVehicle>, Id<Link>> vehicleLocationMap = new HashMap<>();
-			waitingPointsCapcityMap.keySet().forEach(linkId -> waitingPointsOccupancyMap.put(linkId, new MutableInt()));
-			for (DvrpVehicle v : fleet.getVehicles().values()) {
-				Schedule s = v.getSchedule();
-				Task finalTask = Schedules.getLastTask(s);
-				int finalTaskIdx = finalTask.getTaskIdx();
-				int currentTaskIdx = s.getCurrentTask().getTaskIdx();
-				if ((currentTaskIdx == finalTaskIdx || currentTaskIdx == finalTaskIdx - 1) && finalTask instanceof StayTask) {
-					// The vehicle is staying at the final location (i.e., idling) or driving to the final stay task (i.e., being relocated)
-					Link finalStayTaskLink = ((StayTask) finalTask).getLink();
-					// store the location of the (idling) vehicle for later use
-					vehicleLocationMap.put(v.getId(), finalStayTaskLink.getId());
-					if (waitingPointsOccupancyMap.containsKey(finalStayTaskLink.getId())) {
-						waitingPointsOccupancyMap.get(finalStayTaskLink.getId()).increment();
-					}
+			// we first bring the capacities and the distribution of the vehicles up to date
+			updateCapacities(time);
+			updateVehicles(idleVehicles);
+			relocations = minCostAssignment == null ? calcGreedyRelocations(idleVehicles) : calcOptimalRelocations(idleVehicles);
+			metrics.recordOccupancy(time, waitingPoints);
+		}
+		if (failures > 0) {
+			log.warn("No suitable waiting point can be found for {} vehicles! Probably because the sum of the capacities in the waiting points is " +
+				"smaller than the fleet size. Please double check that! These vehicles will not be relocated", failures);
+		}
+
+		metrics.recordCall(time, System.nanoTime() - startTime, idleVehicles.size(), relocations.size(), failures);
+		jfrEvent.end();
+		if (jfrEvent.shouldCommit()) {
+			jfrEvent.mode = mode;
+			jfrEvent.simulationTime = time;
+			jfrEvent.idleVehicles = idleVehicles.size();
+			jfrEvent.relocations = relocations.size();
+			jfrEvent.failures = failures;
+			jfrEvent.commit();
+		}
+		return relocations;
+	}
+
+	private List<Relocation> calcGreedyRelocations(List<? extends DvrpVehicle> idleVehicles) {
+		List<Relocation> relocations = new ArrayList<>();
+		for (DvrpVehicle idleVehicle : idleVehicles) {
+			if (needsRelocation(idleVehicle)) {
+				// vehicle is not at any waiting point or it is stopping at a waiting point, but there is no extra space
+				// -> go to the nearest waiting point that is not yet full
+				Link currentLink = getCurrentLink(idleVehicle);
+				int nearestAvailableWaitingPoint = findNearestAvailableWaitingPoint(currentLink);
+				if (nearestAvailableWaitingPoint == WaitingPointIndex.NONE) {
+					failures++;
+					continue;
 				}
+				relocate(idleVehicle, currentLink, nearestAvailableWaitingPoint, relocations);
 			}
+			// else, stay where it is now.
+		}
+		return relocations;
+	}
 
-			for (DvrpVehicle idleVehicle : idleVehicles) {
-				Id<Link> currentLinkId = vehicleLocationMap.get(idleVehicle.getId());
-				if (!waitingPointsOccupancyMap.containsKey(currentLinkId)) {
-					// vehicle is not at any waiting point -> go to the nearest waiting point that is not yet full
-					Link nearestAvailableWaitingPointLink = findNearestAvailableWaitingPoint(currentLinkId, waitingPointsOccupancyMap);
-					if (nearestAvailableWaitingPointLink == null) {
-						continue;
-					}
-					relocations.add(new Relocation(idleVehicle, nearestAvailableWaitingPointLink));
-					waitingPointsOccupancyMap.get(nearestAvailableWaitingPointLink.getId()).increment();
-				} else if (waitingPointsOccupancyMap.get(currentLinkId).intValue() > waitingPointsCapcityMap.get(currentLinkId)) {
-					// it is stopping at a waiting point, but there is no extra space -> go to next waiting point that is not yet full
-					Link nearestAvailableWaitingPointLink = findNearestAvailableWaitingPoint(currentLinkId, waitingPointsOccupancyMap);
-					if (nearestAvailableWaitingPointLink == null) {
-						continue;
-					}
-					relocations.add(new Relocation(idleVehicle, nearestAvailableWaitingPointLink));
-					waitingPointsOccupancyMap.get(nearestAvailableWaitingPointLink.getId()).increment();
-					waitingPointsOccupancyMap.get(currentLinkId).decrement();
-				}
-				// else, stay where it is now.
+	/**
+	 * Assigns all vehicles that need to be relocated at once to the spare capacity of the waiting points, minimizing the total distance.
+	 */
+	private List<Relocation> calcOptimalRelocations(List<? extends DvrpVehicle> idleVehicles) {
+		List<DvrpVehicle> vehiclesToRelocate = new ArrayList<>();
+		for (DvrpVehicle idleVehicle : idleVehicles) {
+			if (needsRelocation(idleVehicle)) {
+				vehiclesToRelocate.add(idleVehicle);
+				// release the place at the over-full waiting point, so that the remaining vehicles are not relocated as well
+				setVehicleWaitingPoint(idleVehicle.getId().index(), WaitingPointIndex.NONE);
+			}
+		}
+		if (vehiclesToRelocate.isEmpty()) {
+			return new ArrayList<>();
+		}
+
+		// each waiting point with spare capacity is one column of the assignment
+		if (assignmentPoints.length < waitingPoints.size()) {
+			assignmentPoints = new int[waitingPoints.size()];
+			assignmentCapacities = new int[waitingPoints.size()];
+		}
+		int columns = 0;
+		for (int point = 0; point < waitingPoints.size(); point++) {
+			int spareCapacity = waitingPoints.getCapacity(point) - waitingPoints.getOccupancy(point);
+			if (spareCapacity > 0) {
+				assignmentPoints[columns] = point;
+				assignmentCapacities[columns] = spareCapacity;
+				columns++;
+			}
+		}
+
+		int rows = vehiclesToRelocate.size();
+		if (assignmentCosts.length < rows * columns) {
+			assignmentCosts = new double[rows * columns];
+		}
+		double[] costs = assignmentCosts;
+		for (int row = 0; row < rows; row++) {
+			Link currentLink = getCurrentLink(vehiclesToRelocate.get(row));
+			for (int column = 0; column < columns; column++) {
+				double cost = calcDistance(currentLink, assignmentPoints[column]);
+				// the solver needs finite costs, unreachable waiting points are filtered afterwards
+				costs[row * columns + column] = Double.isInfinite(cost) ? UNREACHABLE_COST : cost;
+			}
+		}
+
+		int[] assignedColumns = minCostAssignment.solve(costs, rows, columns, assignmentCapacities);
+
+		List<Relocation> relocations = new ArrayList<>();
+		for (int row = 0; row < rows; row++) {
+			DvrpVehicle vehicle = vehiclesToRelocate.get(row);
+			int assignedColumn = assignedColumns[row];
+			if (assignedColumn == MinCostAssignment.UNASSIGNED || costs[row * columns + assignedColumn] == UNREACHABLE_COST) {
+				// the vehicle stays where it is and is counted there again
+				failures++;
+				setVehicleWaitingPoint(vehicle.getId().index(), findCurrentWaitingPoint(vehicle));
+				continue;
 			}
+			relocate(vehicle, getCurrentLink(vehicle), assignmentPoints[assignedColumn], relocations);
 		}
 		return relocations;
 	}
 
-	private Link findNearestAvailableWaitingPoint(Id<Link> currentLinkId, Map<Id<Link>, MutableInt> waitingPointsOccupancyMap) {
-		double shortestDistance = Double.POSITIVE_INFINITY;
-		Link nearestWaitingPoint = null;
+	private boolean needsRelocation(DvrpVehicle idleVehicle) {
+		int currentWaitingPoint = vehicleWaitingPoints[idleVehicle.getId().index()];
+		return currentWaitingPoint == WaitingPointIndex.NONE
+			|| waitingPoints.getOccupancy(currentWaitingPoint) > waitingPoints.getCapacity(currentWaitingPoint);
+	}
 
-		for (Id<Link> waitingPoint : waitingPointsOccupancyMap.keySet()) {
-			if (waitingPointsOccupancyMap.get(waitingPoint).intValue() < waitingPointsCapcityMap.get(waitingPoint)) {
-				double distance = CoordUtils.calcEuclideanDistance(network.getLinks().get(currentLinkId).getToNode().getCoord(),
-					network.getLinks().get(waitingPoint).getToNode().getCoord());
-				if (distance < shortestDistance) {
-					nearestWaitingPoint = network.getLinks().get(waitingPoint);
-					shortestDistance = distance;
-				}
+	private static Link getCurrentLink(DvrpVehicle idleVehicle) {
+		return ((StayTask) idleVehicle.getSchedule().getCurrentTask()).getLink();
+	}
+
+	private void relocate(DvrpVehicle vehicle, Link currentLink, int waitingPoint, List<Relocation> relocations) {
+		Link waitingPointLink = waitingPoints.getLink(waitingPoint);
+		relocations.add(new Relocation(vehicle, waitingPointLink));
+		metrics.recordRelocation(CoordUtils.calcEuclideanDistance(currentLink.getToNode().getCoord(), waitingPointLink.getToNode().getCoord()));
+		setVehicleWaitingPoint(vehicle.getId().index(), waitingPoint);
+		// the schedule will be changed by the relocation
+		markChanged(vehicle.getId());
+	}
+
+	/**
+	 * Distance from the current link of the vehicle to the waiting point, according to the configured distance measure.
+	 */
+	private double calcDistance(Link currentLink, int waitingPoint) {
+		if (waitingPointTravelTimes != null) {
+			return waitingPointTravelTimes.getTravelTime(waitingPoint, currentLink.getToNode());
+		}
+		return CoordUtils.calcEuclideanDistance(currentLink.getToNode().getCoord(), waitingPoints.getLink(waitingPoint).getToNode().getCoord());
+	}
+
+	private void updateCapacities(double time) {
+		int bin = capacities.getBin(time);
+		if (bin != capacityBin) {
+			waitingPoints.setCapacities(capacities.getCapacities(bin));
+			capacityBin = bin;
+		}
+	}
+
+	private void updateVehicles(List<? extends DvrpVehicle> idleVehicles) {
+		vehiclesToUpdate.clear();
+		synchronized (changedVehicles) {
+			vehiclesToUpdate.or(changedVehicles);
+			changedVehicles.clear();
+		}
+		// these are checked against their schedules directly, independent of the event processing
+		vehiclesToUpdate.or(countedVehicles);
+		for (DvrpVehicle idleVehicle : idleVehicles) {
+			vehiclesToUpdate.set(idleVehicle.getId().index());
+		}
+
+		for (int idx = vehiclesToUpdate.nextSetBit(0); idx >= 0; idx = vehiclesToUpdate.nextSetBit(idx + 1)) {
+			setVehicleWaitingPoint(idx, findCurrentWaitingPoint(vehicles[idx]));
+		}
+	}
+
+	private int findCurrentWaitingPoint(DvrpVehicle v) {
+		Schedule s = v.getSchedule();
+		if (s.getStatus() != Schedule.ScheduleStatus.STARTED) {
+			return WaitingPointIndex.NONE;
+		}
+		Task finalTask = Schedules.getLastTask(s);
+		int finalTaskIdx = finalTask.getTaskIdx();
+		int currentTaskIdx = s.getCurrentTask().getTaskIdx();
+		if ((currentTaskIdx == finalTaskIdx || currentTaskIdx == finalTaskIdx - 1) && finalTask instanceof StayTask) {
+			// The vehicle is staying at the final location (i.e., idling) or driving to the final stay task (i.e., being relocated)
+			return waitingPoints.getPoint(((StayTask) finalTask).getLink().getId());
+		}
+		return WaitingPointIndex.NONE;
+	}
+
+	private void setVehicleWaitingPoint(int vehicleIdx, int waitingPoint) {
+		int previousWaitingPoint = vehicleWaitingPoints[vehicleIdx];
+		if (previousWaitingPoint == waitingPoint) {
+			return;
+		}
+		if (previousWaitingPoint != WaitingPointIndex.NONE) {
+			waitingPoints.decrement(previousWaitingPoint);
+		}
+		if (waitingPoint != WaitingPointIndex.NONE) {
+			waitingPoints.increment(waitingPoint);
+		}
+		vehicleWaitingPoints[vehicleIdx] = waitingPoint;
+		countedVehicles.set(vehicleIdx, waitingPoint != WaitingPointIndex.NONE);
+	}
+
+	/**
+	 * Inspects the schedule of the vehicle again in the next call.
+	 */
+	void markChanged(Id<DvrpVehicle> vehicleId) {
+		// events may be processed outside the mobsim thread
+		synchronized (changedVehicles) {
+			changedVehicles.set(vehicleId.index());
+		}
+	}
+
+	/**
+	 * Derives the occupancy of all waiting points from the schedules again in the next call, as if all vehicles had changed their task.
+	 */
+	void markAllVehiclesChanged() {
+		synchronized (changedVehicles) {
+			for (DvrpVehicle vehicle : fleet.getVehicles().values()) {
+				changedVehicles.set(vehicle.getId().index());
 			}
 		}
+	}
+
+	@Override
+	public void handleEvent(TaskStartedEvent event) {
+		if (event.getDvrpMode().equals(mode)) {
+			markChanged(event.getDvrpVehicleId());
+		}
+	}
+
+	@Override
+	public void handleEvent(TaskEndedEvent event) {
+		if (event.getDvrpMode().equals(mode)) {
+			markChanged(event.getDvrpVehicleId());
+		}
+	}
 
-		if (nearestWaitingPoint == null) {
-			log.warn("No suitable waiting point can be found! Probably because the sum of the capacities in the waiting points is smaller than " +
-				"the fleet size. Please double check that! The vehicle will not be relocated");
+	@Override
+	public void handleEvent(PassengerRequestScheduledEvent event) {
+		if (event.getMode().equals(mode)) {
+			markChanged(event.getVehicleId());
 		}
+	}
 
-		return nearestWaitingPoint;
+	private int findNearestAvailableWaitingPoint(Link currentLink) {
+		return waitingPointTravelTimes == null ?
+			waitingPoints.findNearestAvailable(currentLink.getToNode().getCoord()) :
+			waitingPointTravelTimes.findNearestAvailable(waitingPoints, currentLink.getToNode());
 	}
 }
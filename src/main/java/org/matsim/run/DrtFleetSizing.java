@@ -2,10 +2,11 @@ package org.matsim.run;
 
 import com.google.common.base.Preconditions;
 import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVParser;
-import org.apache.commons.csv.CSVRecord;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.matsim.api.core.v01.Coord;
-import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
 import org.matsim.api.core.v01.TransportMode;
 import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.network.Network;
@@ -21,19 +22,40 @@ import org.matsim.contrib.dvrp.run.AbstractDvrpModeModule;
 import org.matsim.contrib.dvrp.run.DvrpConfigGroup;
 import org.matsim.core.config.Config;
 import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.controler.AbstractModule;
 import org.matsim.core.controler.Controler;
+import org.matsim.core.controler.TerminationCriterion;
+import org.matsim.core.controler.listener.IterationEndsListener;
 import org.matsim.core.network.NetworkUtils;
 import org.matsim.core.population.PopulationUtils;
-import org.matsim.core.router.DefaultAnalysisMainModeIdentifier;
-import org.matsim.core.router.MainModeIdentifier;
-import org.matsim.core.router.TripStructureUtils;
-import org.matsim.core.utils.io.IOUtils;
+import org.matsim.core.population.io.StreamingPopulationReader;
+import org.matsim.core.scenario.MutableScenario;
+import org.matsim.core.scenario.ScenarioUtils;
 import org.matsim.rebalancing.WaitingPointsBasedRebalancingModule;
+import org.matsim.run.prepare.LinkSnapper;
+import org.matsim.vehicles.MatsimVehicleReader;
+import org.matsim.vehicles.MatsimVehicleWriter;
+import org.matsim.vehicles.VehicleUtils;
+import org.matsim.vehicles.Vehicles;
 import picocli.CommandLine;
 
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.matsim.application.ApplicationUtils.globFile;
 
@@ -42,6 +64,10 @@ import static org.matsim.application.ApplicationUtils.globFile;
  * of a standard MATSim run (where the fleet is usually more than enough).
  */
 public class DrtFleetSizing implements MATSimAppCommand {
+	private static final Logger log = LogManager.getLogger(DrtFleetSizing.class);
+	private static final String DRT_NETWORK = "https://svn.vsp.tu-berlin.de/repos/public-svn/matsim/scenarios/countries/de/kelheim/kelheim-v3.1/input/av-fleet-sizing/kelheim-v3.0-drt-network.xml.gz";
+	private static final int NOT_FOUND = -1;
+
 	@CommandLine.Option(names = "--run-folder", description = "Output folder of MATsim run", required = true)
 	private String matsimRunFolderPath;
 
@@ -70,6 +96,35 @@ public class DrtFleetSizing implements MATSimAppCommand {
 	@CommandLine.Option(names = "--fleet-sizing", description = "a triplet: [from max interval]. ", arity = "1..*", defaultValue = "10 50 5")
 	private List<Integer> fleetSizing;
 
+	@CommandLine.Option(names = "--search", description = "search of the minimum fleet size: ${COMPLETION-CANDIDATES}. linear runs the fleet sizes " +
+		"of --fleet-sizing until the target is reached, bisection then bisects the last step down to single vehicles", defaultValue = "linear")
+	private Search search;
+
+	@CommandLine.Option(names = "--parallel", description = "number of fleet sizes that are simulated concurrently, only with the linear search. " +
+		"The runs share the global random number generator, so their results are not reproducible and may not decrease strictly with the " +
+		"fleet size, which the bisection relies on", defaultValue = "1")
+	private int parallel;
+
+	@CommandLine.Option(names = "--early-stop-margin", description = "a run ends after an iteration whose average waiting time is more than " +
+		"this share below or above the target, e.g. 0.2. The default 0 always runs all iterations", defaultValue = "0")
+	private double earlyStopMargin;
+
+	/**
+	 * Waiting times by fleet size of all runs.
+	 */
+	private final Map<Integer, WaitTimes> waitingTimes = new ConcurrentSkipListMap<>();
+
+	/**
+	 * Inputs shared by all runs: the network is only read, the plans are copied for every run.
+	 */
+	private Network drtNetwork;
+	private Population avPlans;
+
+	/**
+	 * Worker pool with {@code parallel} threads, every thread runs one drt simulation at a time.
+	 */
+	private ExecutorService executor;
+
 
 	public static void main(String[] args) {
 		new DrtFleetSizing().execute(args);
@@ -82,106 +137,282 @@ public class DrtFleetSizing implements MATSimAppCommand {
 			Files.createDirectories(Path.of(outputFolderPath));
 		}
 
-		// read DRT trips and generate plans
-		String drtNetworkPath = "https://svn.vsp.tu-berlin.de/repos/public-svn/matsim/scenarios/countries/de/kelheim/kelheim-v3.1/input/av-fleet-sizing/kelheim-v3.0-drt-network.xml.gz";
-		Network drtNetwork = NetworkUtils.readNetwork(drtNetworkPath);
+		// read DRT trips and generate plans, the output population is streamed and only the av trips are kept
+		drtNetwork = NetworkUtils.readNetwork(DRT_NETWORK);
 		Path outputPopulationPath = globFile(Path.of(matsimRunFolderPath), "*output_plans.xml.gz*");
-		MainModeIdentifier modeIdentifier = new DefaultAnalysisMainModeIdentifier();
-		Population outputPlans = PopulationUtils.readPopulation(outputPopulationPath.toString());
-		Population avPlans = PopulationUtils.createPopulation(ConfigUtils.createConfig());
-		PopulationFactory pf = avPlans.getFactory();
-
-		int counter = 0;
-		for (Person person : outputPlans.getPersons().values()) {
-			Plan selectedPlan = person.getSelectedPlan();
-			List<TripStructureUtils.Trip> trips = TripStructureUtils.getTrips(selectedPlan);
-			for (TripStructureUtils.Trip trip : trips) {
-				String mode = modeIdentifier.identifyMainMode(trip.getTripElements());
-				if (mode.equals("av")) {
-					Person avPerson = pf.createPerson(Id.createPersonId("dummy-" + counter));
-					Plan avPlan = pf.createPlan();
-
-					Activity act0 = trip.getOriginActivity();
-					act0.setType("dummy");
-					Coord fromCoord = act0.getCoord();
-					Link fromLinkOnDrtNetwork = NetworkUtils.getNearestLink(drtNetwork, fromCoord);
-					act0.setLinkId(fromLinkOnDrtNetwork.getId());
-
-					Leg leg = pf.createLeg("av");
-
-					Activity act1 = trip.getDestinationActivity();
-					act1.setType("dummy");
-					act1.setEndTime(30 * 3600);
-					Coord toCoord = act1.getCoord();
-					Link toLinkOnDrtNetwork = NetworkUtils.getNearestLink(drtNetwork, toCoord);
-					act1.setLinkId(toLinkOnDrtNetwork.getId());
-
-					act0.setStartTime(0);
-					avPlan.addActivity(act0);
-					avPlan.addLeg(leg);
-					avPlan.addActivity(act1);
-					avPerson.addPlan(avPlan);
-					avPlans.addPerson(avPerson);
-
-					counter++;
-				}
-			}
+		avPlans = PopulationUtils.createPopulation(ConfigUtils.createConfig());
+		DrtTripExtractor tripExtractor = new DrtTripExtractor("av", avPlans);
+		StreamingPopulationReader reader = new StreamingPopulationReader(ScenarioUtils.createScenario(ConfigUtils.createConfig()));
+		reader.addAlgorithm(tripExtractor);
+		reader.readFile(outputPopulationPath.toString());
+		List<Activity> tripEnds = tripExtractor.getTripEnds();
+		log.info("Extracted {} av trips", avPlans.getPersons().size());
+
+		// move the trip ends onto the drt network
+		Coord[] coords = tripEnds.stream().map(Activity::getCoord).toArray(Coord[]::new);
+		Link[] links = new LinkSnapper(drtNetwork).snap(coords);
+		for (int i = 0; i < links.length; i++) {
+			tripEnds.get(i).setLinkId(links[i].getId());
 		}
+
 		new PopulationWriter(avPlans).write(outputFolderPath + "/av-plans.xml.gz");
 
 		// run DRT simulations
 		Preconditions.checkArgument(fleetSizing.size() == 3);
+		Preconditions.checkArgument(parallel <= 1 || search == Search.linear,
+			"--parallel can only be used with the linear search, concurrent runs disturb each other's random numbers");
 		int fleetFrom = fleetSizing.get(0);
 		int fleetMax = fleetSizing.get(1);
 		int fleetInterval = fleetSizing.get(2);
 
+		// the spatial indices of the network are created lazily, build them before the network is shared by the runs
+		NetworkUtils.getNearestNode(drtNetwork, drtNetwork.getNodes().values().iterator().next().getCoord());
+
+		if (parallel > 1) {
+			log.warn("Simulating {} fleet sizes concurrently. The runs share the global random number generator, so they are not reproducible.",
+				parallel);
+		}
+
+		int fleetSize;
+		executor = Executors.newFixedThreadPool(Math.max(1, parallel));
+		try {
+			fleetSize = switch (search) {
+				case linear -> searchLinear(fleetFrom, fleetMax, fleetInterval);
+				case bisection -> searchBisection(fleetFrom, fleetMax, fleetInterval);
+			};
+		} finally {
+			// running simulations are finished, their results are still written
+			executor.shutdown();
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+		}
+		writeWaitingTimes();
+
+		if (fleetSize == NOT_FOUND) {
+			log.warn("No fleet size up to {} reaches the target average waiting time of {} s", fleetMax, meanWaitTime);
+		} else {
+			log.info("Minimum fleet size for the target average waiting time of {} s: {}", meanWaitTime, fleetSize);
+		}
+
+		return 0;
+	}
+
+	/**
+	 * Runs the fleet sizes from, from + interval, ... until the target is reached. With parallel runs, the next fleet sizes are already
+	 * simulated while the smaller ones are running, at most {@code parallel - 1} of them are simulated in vain. These are finished before
+	 * the search returns.
+	 */
+	private int searchLinear(int fleetFrom, int fleetMax, int fleetInterval) {
+		List<Integer> fleetSizes = new ArrayList<>();
 		for (int fleetSize = fleetFrom; fleetSize <= fleetMax; fleetSize += fleetInterval) {
-			// setup DRT run
-			Config config = ConfigUtils.loadConfig(drtConfigPath, new MultiModeDrtConfigGroup(DrtWithExtensionsConfigGroup::new), new DvrpConfigGroup());
-			config.network().setInputFile(drtNetworkPath);
-			config.plans().setInputFile(outputFolderPath + "/av-plans.xml.gz");
-			config.controller().setLastIteration(1);
-			config.controller().setOutputDirectory(outputFolderPath + "/" + fleetSize + "-veh");
-			config.vehicles().setVehiclesFile(vehiclesFolderPath + "/" + fleetSize + "-veh.xml");
-			String singleDrtRunOutputDirectory = config.controller().getOutputDirectory();
-			MultiModeDrtConfigGroup multiModeDrtConfig = MultiModeDrtConfigGroup.get(config);
-			Controler controler = DrtControlerCreator.createControler(config, false);
-
-			for (DrtConfigGroup drtCfg : multiModeDrtConfig.getModalElements()) {
-				if (drtCfg.getMode().equals("av")) {
-					drtCfg.transitStopFile = transitStopFilePath;
-					controler.addOverridingModule(new WaitingPointsBasedRebalancingModule(drtCfg, waitingPointsPath));
-				}
-
-				if (drtCfg.getMode().equals(TransportMode.drt)) {
-					controler.addOverridingModule(new AbstractDvrpModeModule(drtCfg.mode) {
-						@Override
-						public void install() {
-							bindModal(RebalancingStrategy.class).to(NoRebalancingStrategy.class).asEagerSingleton();
-						}
-					});
-				}
+			fleetSizes.add(fleetSize);
+		}
+
+		Deque<Future<Double>> runs = new ArrayDeque<>();
+		int next = 0;
+		for (int i = 0; i < fleetSizes.size(); i++) {
+			while (next < fleetSizes.size() && runs.size() < parallel) {
+				runs.addLast(submit(fleetSizes.get(next++)));
+			}
+			if (getResult(runs.removeFirst()) < meanWaitTime) {
+				// at most parallel runs are submitted, so the remaining ones are already running and can not be cancelled
+				runs.forEach(DrtFleetSizing::getResult);
+				return fleetSizes.get(i);
 			}
+		}
+		return NOT_FOUND;
+	}
 
-			// run simulation
-			controler.run();
-
-			// analyze mean waiting time
-			Path waitTimeStatsPath = globFile(Path.of(singleDrtRunOutputDirectory), "*drt_customer_stats_av.csv*");
-			double waitingTime = 0;
-			CSVFormat.Builder format = CSVFormat.DEFAULT.builder().setDelimiter(';').setHeader().setSkipHeaderRecord(true);
-			try (CSVParser parser = new CSVParser(IOUtils.getBufferedReader(waitTimeStatsPath.toString()), format.build())) {
-				for (CSVRecord row : parser) {
-					waitingTime = Double.parseDouble(row.get("wait_average"));
-					// we take the value of the last row (Probably not the best way, but it should do the job...).
-				}
+	/**
+	 * Assumes that the waiting time decreases with the fleet size. The target is bracketed with the coarse steps of the linear search, then
+	 * the interval is bisected until the smallest fleet size that reaches the target is found. The runs are not parallel, as runs that
+	 * share the random number generator do not have to be monotonic in the fleet size.
+	 */
+	private int searchBisection(int fleetFrom, int fleetMax, int fleetInterval) {
+		int upper = searchLinear(fleetFrom, fleetMax, fleetInterval);
+		if (upper == NOT_FOUND || upper == fleetFrom) {
+			return upper;
+		}
+
+		// the largest fleet size known to miss the target
+		int lower = upper - fleetInterval;
+		while (upper - lower > 1) {
+			int fleetSize = (lower + upper) >>> 1;
+			if (getResult(submit(fleetSize)) < meanWaitTime) {
+				upper = fleetSize;
+			} else {
+				lower = fleetSize;
 			}
+		}
+		return upper;
+	}
 
-			if (waitingTime < meanWaitTime) {
-				break;
+	private Future<Double> submit(int fleetSize) {
+		return executor.submit(() -> runFleetSize(fleetSize));
+	}
+
+	private static double getResult(Future<Double> run) {
+		try {
+			return run.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Drt simulation failed", e.getCause());
+		}
+	}
+
+	/**
+	 * Runs the drt simulation with the given fleet size and returns the average waiting time of the last iteration. The waiting times are
+	 * collected from the events, the standard outputs of these runs are mostly switched off.
+	 */
+	private double runFleetSize(int fleetSize) {
+		log.info("Starting drt simulation with {} vehicles", fleetSize);
+		// setup DRT run
+		Config config = ConfigUtils.loadConfig(drtConfigPath, new MultiModeDrtConfigGroup(DrtWithExtensionsConfigGroup::new), new DvrpConfigGroup());
+		config.network().setInputFile(DRT_NETWORK);
+		config.plans().setInputFile(outputFolderPath + "/av-plans.xml.gz");
+		config.controller().setLastIteration(1);
+		config.controller().setOutputDirectory(outputFolderPath + "/" + fleetSize + "-veh");
+		config.vehicles().setVehiclesFile(getVehiclesFile(fleetSize));
+		config.controller().setWriteEventsInterval(0);
+		config.controller().setWritePlansInterval(0);
+		config.controller().setWriteTripsInterval(0);
+		config.controller().setDumpDataAtEnd(false);
+		MultiModeDrtConfigGroup multiModeDrtConfig = MultiModeDrtConfigGroup.get(config);
+		Controler controler = DrtControlerCreator.createControler(config, createScenario(config), false);
+
+		int lastIteration = config.controller().getLastIteration();
+		DrtWaitTimeCollector waitTimeCollector = new DrtWaitTimeCollector("av");
+		AtomicInteger lastRunIteration = new AtomicInteger();
+		controler.addOverridingModule(new AbstractModule() {
+			@Override
+			public void install() {
+				addEventHandlerBinding().toInstance(waitTimeCollector);
+				addControlerListenerBinding().toInstance((IterationEndsListener) event -> lastRunIteration.set(event.getIteration()));
+				bind(TerminationCriterion.class).toInstance(new TerminationCriterion() {
+					@Override
+					public boolean mayTerminateAfterIteration(int iteration) {
+						return earlyStopMargin > 0 || iteration >= lastIteration;
+					}
+
+					@Override
+					public boolean doTerminate(int iteration) {
+						return iteration >= lastIteration || isDecided(waitTimeCollector);
+					}
+				});
+			}
+		});
+
+		for (DrtConfigGroup drtCfg : multiModeDrtConfig.getModalElements()) {
+			drtCfg.plotDetailedCustomerStats = false;
+			if (drtCfg.getMode().equals("av")) {
+				drtCfg.transitStopFile = transitStopFilePath;
+				controler.addOverridingModule(new WaitingPointsBasedRebalancingModule(drtCfg, waitingPointsPath));
+			}
+
+			if (drtCfg.getMode().equals(TransportMode.drt)) {
+				controler.addOverridingModule(new AbstractDvrpModeModule(drtCfg.mode) {
+					@Override
+					public void install() {
+						bindModal(RebalancingStrategy.class).to(NoRebalancingStrategy.class).asEagerSingleton();
+					}
+				});
 			}
 		}
 
-		return 0;
+		// run simulation
+		controler.run();
+
+		// the collector still holds the waiting times of the last iteration
+		WaitTimes result = new WaitTimes(lastRunIteration.get(), waitTimeCollector.getRides(), waitTimeCollector.getMean(),
+			waitTimeCollector.getPercentile(0.5), waitTimeCollector.getPercentile(0.95));
+		if (result.iteration() < lastIteration) {
+			log.info("Drt simulation with {} vehicles stopped early after iteration {}", fleetSize, result.iteration());
+		}
+		log.info("Average waiting time with {} vehicles: {} s", fleetSize, result.average());
+		waitingTimes.put(fleetSize, result);
+		return result.average();
+	}
+
+	/**
+	 * Whether the average waiting time of the iteration is so far from the target that further iterations will not change the outcome.
+	 */
+	private boolean isDecided(DrtWaitTimeCollector waitTimeCollector) {
+		return earlyStopMargin > 0 && waitTimeCollector.getRides() > 0
+			&& Math.abs(waitTimeCollector.getMean() - meanWaitTime) > earlyStopMargin * meanWaitTime;
+	}
+
+	/**
+	 * Loads the scenario of a run with the shared drt network and a copy of the av plans, only the vehicles etc. are read from the files.
+	 */
+	private Scenario createScenario(Config config) {
+		Scenario scenario = DrtControlerCreator.createScenarioWithDrtRouteFactory(config);
+		String networkFile = config.network().getInputFile();
+		String plansFile = config.plans().getInputFile();
+		try {
+			config.network().setInputFile(null);
+			config.plans().setInputFile(null);
+			ScenarioUtils.loadScenario(scenario);
+		} finally {
+			config.network().setInputFile(networkFile);
+			config.plans().setInputFile(plansFile);
+		}
+
+		((MutableScenario) scenario).setNetwork(drtNetwork);
+		Population population = scenario.getPopulation();
+		for (Person avPerson : avPlans.getPersons().values()) {
+			Person person = population.getFactory().createPerson(avPerson.getId());
+			Plan plan = population.getFactory().createPlan();
+			PopulationUtils.copyFromTo(avPerson.getSelectedPlan(), plan);
+			person.addPlan(plan);
+			population.addPerson(person);
+		}
+		return scenario;
+	}
+
+	/**
+	 * Vehicles files are expected for the fleet sizes of the linear search. Other fleet sizes (from the bisection) consist of the first
+	 * vehicles of the next larger of these fleets.
+	 */
+	private String getVehiclesFile(int fleetSize) {
+		int fleetFrom = fleetSizing.get(0);
+		int fleetInterval = fleetSizing.get(2);
+		if (fleetSize >= fleetFrom && (fleetSize - fleetFrom) % fleetInterval == 0) {
+			return vehiclesFolderPath + "/" + fleetSize + "-veh.xml";
+		}
+
+		int largerFleetSize = fleetFrom + ((fleetSize - fleetFrom) / fleetInterval + 1) * fleetInterval;
+		Vehicles largerFleet = VehicleUtils.createVehiclesContainer();
+		new MatsimVehicleReader(largerFleet).readFile(vehiclesFolderPath + "/" + largerFleetSize + "-veh.xml");
+
+		Vehicles fleet = VehicleUtils.createVehiclesContainer();
+		largerFleet.getVehicleTypes().values().forEach(fleet::addVehicleType);
+		largerFleet.getVehicles().values().stream().limit(fleetSize).forEach(fleet::addVehicle);
+
+		String vehiclesFile = outputFolderPath + "/vehicles/" + fleetSize + "-veh.xml";
+		new File(vehiclesFile).getParentFile().mkdirs();
+		new MatsimVehicleWriter(fleet).writeFile(vehiclesFile);
+		return vehiclesFile;
+	}
+
+	private void writeWaitingTimes() throws IOException {
+		try (CSVPrinter printer = new CSVPrinter(new FileWriter(outputFolderPath + "/fleet-sizing.csv"), CSVFormat.DEFAULT)) {
+			printer.printRecord("fleet_size", "iteration", "rides", "wait_average", "wait_median", "wait_p95");
+			for (Map.Entry<Integer, WaitTimes> entry : waitingTimes.entrySet()) {
+				WaitTimes result = entry.getValue();
+				printer.printRecord(entry.getKey(), result.iteration(), result.rides(), result.average(), result.median(), result.p95());
+			}
+		}
+	}
+
+	/**
+	 * Search of the minimum fleet size.
+	 */
+	enum Search {linear, bisection}
+
+	/**
+	 * Waiting times in seconds of the last iteration of a run, which is before the last iteration of the config if the run stopped early.
+	 */
+	private record WaitTimes(int iteration, long rides, double average, double median, double p95) {
 	}
 }
@@ -0,0 +1,76 @@
+package org.matsim.run;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.api.core.v01.population.PopulationFactory;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.population.algorithms.PersonAlgorithm;
+import org.matsim.core.router.DefaultAnalysisMainModeIdentifier;
+import org.matsim.core.router.MainModeIdentifier;
+import org.matsim.core.router.TripStructureUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Extracts the trips with the given main mode from the selected plans of a population into a separate population with one dummy person per
+ * trip. Meant to be used with a {@link org.matsim.core.population.io.StreamingPopulationReader}, so that only the persons of the
+ * extracted trips are kept in memory. The trip ends are copied and not yet assigned to links, see {@link #getTripEnds()}.
+ */
+final class DrtTripExtractor implements PersonAlgorithm {
+
+	private final String mode;
+	private final Population trips;
+	private final MainModeIdentifier modeIdentifier = new DefaultAnalysisMainModeIdentifier();
+	private final List<Activity> tripEnds = new ArrayList<>();
+
+	DrtTripExtractor(String mode, Population trips) {
+		this.mode = mode;
+		this.trips = trips;
+	}
+
+	@Override
+	public void run(Person person) {
+		Plan selectedPlan = person.getSelectedPlan();
+		if (selectedPlan == null) {
+			return;
+		}
+
+		PopulationFactory pf = trips.getFactory();
+		for (TripStructureUtils.Trip trip : TripStructureUtils.getTrips(selectedPlan)) {
+			if (!mode.equals(modeIdentifier.identifyMainMode(trip.getTripElements()))) {
+				continue;
+			}
+
+			Person tripPerson = pf.createPerson(Id.createPersonId("dummy-" + trips.getPersons().size()));
+			Plan plan = pf.createPlan();
+
+			// copies, as the destination of a trip is the origin of the next one
+			Activity act0 = PopulationUtils.createActivity(trip.getOriginActivity());
+			act0.setType("dummy");
+			act0.setStartTime(0);
+
+			Activity act1 = PopulationUtils.createActivity(trip.getDestinationActivity());
+			act1.setType("dummy");
+			act1.setEndTime(30 * 3600);
+
+			plan.addActivity(act0);
+			plan.addLeg(pf.createLeg(mode));
+			plan.addActivity(act1);
+			tripPerson.addPlan(plan);
+			trips.addPerson(tripPerson);
+			tripEnds.add(act0);
+			tripEnds.add(act1);
+		}
+	}
+
+	/**
+	 * Origin and destination activities of all extracted trips, in the order of extraction.
+	 */
+	List<Activity> getTripEnds() {
+		return tripEnds;
+	}
+}
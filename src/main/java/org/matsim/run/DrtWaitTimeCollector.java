@@ -0,0 +1,124 @@
+package org.matsim.run;
+
+import it.unimi.dsi.fastutil.ints.Int2DoubleMap;
+import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2IntMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import org.matsim.contrib.drt.passenger.events.DrtRequestSubmittedEvent;
+import org.matsim.contrib.drt.passenger.events.DrtRequestSubmittedEventHandler;
+import org.matsim.contrib.dvrp.passenger.PassengerPickedUpEvent;
+import org.matsim.contrib.dvrp.passenger.PassengerPickedUpEventHandler;
+import org.matsim.contrib.dvrp.passenger.PassengerRequestRejectedEvent;
+import org.matsim.contrib.dvrp.passenger.PassengerRequestRejectedEventHandler;
+
+import java.util.Arrays;
+
+/**
+ * Collects the waiting times (from the submission of a request until the pickup of a passenger) of one drt mode during an iteration, so
+ * that the fleet sizing does not need to read them from the drt customer stats afterwards. The waiting times are kept in a histogram with
+ * bins of one second, so the mean is exact and the percentiles are rounded down to full seconds. Rejected requests are not counted,
+ * as in the customer stats.
+ */
+final class DrtWaitTimeCollector implements DrtRequestSubmittedEventHandler, PassengerPickedUpEventHandler, PassengerRequestRejectedEventHandler {
+
+	private final String mode;
+
+	/**
+	 * Submission time and number of passengers not picked up yet of the open requests, by request index.
+	 */
+	private final Int2DoubleMap submissionTimes = new Int2DoubleOpenHashMap();
+	private final Int2IntMap waitingPassengers = new Int2IntOpenHashMap();
+
+	private long[] histogram = new long[3600];
+	private long rides;
+	private double sum;
+
+	DrtWaitTimeCollector(String mode) {
+		this.mode = mode;
+	}
+
+	@Override
+	public void handleEvent(DrtRequestSubmittedEvent event) {
+		if (event.getMode().equals(mode)) {
+			submissionTimes.put(event.getRequestId().index(), event.getTime());
+			waitingPassengers.put(event.getRequestId().index(), event.getPersonIds().size());
+		}
+	}
+
+	@Override
+	public void handleEvent(PassengerPickedUpEvent event) {
+		if (!event.getMode().equals(mode)) {
+			return;
+		}
+		int requestIdx = event.getRequestId().index();
+		if (!submissionTimes.containsKey(requestIdx)) {
+			return;
+		}
+		add(event.getTime() - submissionTimes.get(requestIdx));
+
+		// group requests have one pickup per passenger, only the last one evicts the request
+		int waiting = waitingPassengers.get(requestIdx) - 1;
+		if (waiting > 0) {
+			waitingPassengers.put(requestIdx, waiting);
+		} else {
+			submissionTimes.remove(requestIdx);
+			waitingPassengers.remove(requestIdx);
+		}
+	}
+
+	@Override
+	public void handleEvent(PassengerRequestRejectedEvent event) {
+		if (event.getMode().equals(mode)) {
+			submissionTimes.remove(event.getRequestId().index());
+			waitingPassengers.remove(event.getRequestId().index());
+		}
+	}
+
+	@Override
+	public void reset(int iteration) {
+		submissionTimes.clear();
+		waitingPassengers.clear();
+		Arrays.fill(histogram, 0);
+		rides = 0;
+		sum = 0;
+	}
+
+	void add(double waitTime) {
+		int bin = (int) Math.max(0, waitTime);
+		if (bin >= histogram.length) {
+			histogram = Arrays.copyOf(histogram, Math.max(bin + 1, histogram.length * 2));
+		}
+		histogram[bin]++;
+		rides++;
+		sum += waitTime;
+	}
+
+	/**
+	 * Number of picked up passengers.
+	 */
+	long getRides() {
+		return rides;
+	}
+
+	/**
+	 * Average waiting time in seconds, 0 if no passenger was picked up.
+	 */
+	double getMean() {
+		return rides == 0 ? 0 : sum / rides;
+	}
+
+	/**
+	 * Waiting time in full seconds that the given share (between 0 and 1) of the passengers did not exceed, 0 if no passenger was picked up.
+	 */
+	double getPercentile(double share) {
+		long rank = (long) Math.ceil(share * rides);
+		long count = 0;
+		for (int bin = 0; bin < histogram.length; bin++) {
+			count += histogram[bin];
+			if (count >= rank && count > 0) {
+				return bin;
+			}
+		}
+		return 0;
+	}
+}
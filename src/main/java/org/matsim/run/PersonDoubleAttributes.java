@@ -0,0 +1,77 @@
+package org.matsim.run;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.population.Person;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Per-person double attributes (e.g. random taste terms of the scoring), stored as primitive arrays over the person id index. It is meant to
+ * be filled once when the scenario is prepared. Event handlers look up the {@link Attribute} once and then read the value of a person in O(1)
+ * without a population lookup, string keys or boxing.
+ * The store is registered as a scenario element, see {@link #get(Scenario)}.
+ */
+public final class PersonDoubleAttributes {
+
+	public static final String ELEMENT_NAME = "personDoubleAttributes";
+
+	private final Map<String, Attribute> attributes = new HashMap<>();
+
+	/**
+	 * Returns the store of the scenario, it is created and added to the scenario if needed.
+	 */
+	public static synchronized PersonDoubleAttributes get(Scenario scenario) {
+		PersonDoubleAttributes store = (PersonDoubleAttributes) scenario.getScenarioElement(ELEMENT_NAME);
+		if (store == null) {
+			store = new PersonDoubleAttributes();
+			scenario.addScenarioElement(ELEMENT_NAME, store);
+		}
+		return store;
+	}
+
+	/**
+	 * Returns the attribute with the given name, it is created if needed. Persons without a value are NaN.
+	 */
+	public synchronized Attribute getOrCreateAttribute(String name) {
+		return attributes.computeIfAbsent(name, k -> new Attribute());
+	}
+
+	/**
+	 * Returns the attribute with the given name.
+	 */
+	public synchronized Attribute getAttribute(String name) {
+		Attribute attribute = attributes.get(name);
+		if (attribute == null) {
+			throw new IllegalArgumentException("Unknown person attribute " + name + ", available: " + attributes.keySet());
+		}
+		return attribute;
+	}
+
+	/**
+	 * Values of one attribute by person id index.
+	 */
+	public static final class Attribute {
+		private double[] values = new double[0];
+
+		private Attribute() {
+		}
+
+		public double get(Id<Person> personId) {
+			int index = personId.index();
+			return index < values.length ? values[index] : Double.NaN;
+		}
+
+		public void set(Id<Person> personId, double value) {
+			int index = personId.index();
+			if (index >= values.length) {
+				int length = values.length;
+				values = Arrays.copyOf(values, Math.max(index + 1, Id.getNumberOfIds(Person.class)));
+				Arrays.fill(values, length, values.length, Double.NaN);
+			}
+			values[index] = value;
+		}
+	}
+}
@@ -1,10 +1,14 @@
 package org.matsim.run;
 
+import ch.sbb.matsim.routing.pt.raptor.SwissRailRaptor;
+import ch.sbb.matsim.routing.pt.raptor.SwissRailRaptorConfigGroup;
 import ch.sbb.matsim.routing.pt.raptor.SwissRailRaptorModule;
-import com.google.common.collect.Sets;
 import com.google.inject.Inject;
+import com.google.inject.Singleton;
 import org.matsim.analysis.KelheimMainModeIdentifier;
+import org.matsim.analysis.KelheimMainModeIdentifierConfigGroup;
 import org.matsim.analysis.ModeChoiceCoverageControlerListener;
+import org.matsim.analysis.PerformanceProfilingListener;
 import org.matsim.analysis.personMoney.PersonMoneyEventsAnalysisModule;
 import org.matsim.analysis.postAnalysis.drt.DrtServiceQualityAnalysis;
 import org.matsim.analysis.postAnalysis.drt.DrtVehiclesRoadUsageAnalysis;
@@ -17,7 +21,6 @@ import org.matsim.api.core.v01.events.handler.PersonDepartureEventHandler;
 import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.network.Network;
 import org.matsim.api.core.v01.population.Person;
-import org.matsim.api.core.v01.population.Population;
 import org.matsim.application.MATSimApplication;
 import org.matsim.application.analysis.CheckPopulation;
 import org.matsim.application.analysis.traffic.LinkStats;
@@ -45,6 +48,8 @@ import org.matsim.contrib.dvrp.run.DvrpQSimComponents;
 import org.matsim.contrib.dvrp.trafficmonitoring.DvrpModeLimitedMaxSpeedTravelTimeModule;
 import org.matsim.contrib.vsp.pt.fare.PtFareModule;
 import org.matsim.contrib.vsp.scenario.SnzActivities;
+import org.matsim.convergence.ConvergenceConfigGroup;
+import org.matsim.convergence.ConvergenceModule;
 import org.matsim.core.api.experimental.events.EventsManager;
 import org.matsim.core.config.Config;
 import org.matsim.core.config.ConfigUtils;
@@ -53,11 +58,16 @@ import org.matsim.core.config.groups.VspExperimentalConfigGroup;
 import org.matsim.core.controler.AbstractModule;
 import org.matsim.core.controler.Controler;
 import org.matsim.core.router.AnalysisMainModeIdentifier;
+import org.matsim.core.scenario.MutableScenario;
 import org.matsim.core.scoring.functions.ScoringParametersForPerson;
+import org.matsim.drtFare.DrtFarePolicySweep;
 import org.matsim.drtFare.KelheimDrtFareModule;
 import org.matsim.extensions.pt.routing.ptRoutingModes.PtIntermodalRoutingModesConfigGroup;
+import org.matsim.run.prepare.AllowedModeSets;
 import org.matsim.run.prepare.PrepareNetwork;
 import org.matsim.run.prepare.PreparePopulation;
+import org.matsim.run.snapshot.ScenarioSnapshots;
+import org.matsim.rebalancing.WaitingPointBasedRebalancingStrategyParams;
 import org.matsim.rebalancing.WaitingPointsBasedRebalancingModule;
 import org.matsim.simwrapper.SimWrapperConfigGroup;
 import org.matsim.simwrapper.SimWrapperModule;
@@ -68,6 +78,7 @@ import org.matsim.contrib.vsp.pt.fare.PtFareConfigGroup;
 import playground.vsp.scoring.IncomeDependentUtilityOfMoneyPersonScoringParameters;
 
 import javax.annotation.Nullable;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Set;
 import java.util.SplittableRandom;
@@ -79,7 +90,7 @@ import java.util.SplittableRandom;
 	CreateLandUseShp.class, ResolveGridCoordinates.class, PreparePopulation.class, CleanPopulation.class, FixSubtourModes.class, SplitActivityTypesDuration.class
 })
 @MATSimApplication.Analysis({
-	LinkStats.class, CheckPopulation.class, DrtServiceQualityAnalysis.class, DrtVehiclesRoadUsageAnalysis.class
+	LinkStats.class, CheckPopulation.class, DrtServiceQualityAnalysis.class, DrtVehiclesRoadUsageAnalysis.class, DrtFarePolicySweep.class
 })
 public class RunKelheimScenario extends MATSimApplication {
 
@@ -92,6 +103,13 @@ public class RunKelheimScenario extends MATSimApplication {
 	private static final double WEIGHT_6_PASSENGER = 18.;
 	private static final double WEIGHT_7_PASSENGER = 1.;
 	private static final double WEIGHT_8_PASSENGER = 0.;
+
+	/**
+	 * Network and transit data of an earlier run, see {@link RunKelheimSeeds}.
+	 */
+	@Nullable
+	private final SharedScenarioData sharedData;
+
 	@CommandLine.Mixin
 	private final SampleOptions sample = new SampleOptions(25, 10, 1);
 
@@ -124,6 +142,14 @@ public class RunKelheimScenario extends MATSimApplication {
 	@CommandLine.Option(names = "--surcharge", defaultValue = "1.0", description = "Surcharge of KEXI trip from / to train station")
 	private double surcharge;
 
+	@CommandLine.Option(names = "--fare-matrix", defaultValue = "", description = "tsv file with zone-to-zone fares of KEXI trips " +
+		"(columns: from_zone, to_zone, fare), which replace the surcharge. If unspecified, the surcharge applies to trips from / to zone 2")
+	private String fareMatrixFile;
+
+	@CommandLine.Option(names = "--zone-base-fares", defaultValue = "", description = "tsv file with the base fare of KEXI trips per origin zone " +
+		"(columns: zone, base_fare). Only used together with --fare-matrix")
+	private String zoneBaseFaresFile;
+
 	@CommandLine.Option(names = "--rebalancing", description = "enable waiting point based rebalancing strategy or not", defaultValue = "false")
 	private boolean rebalancing;
 
@@ -131,19 +157,57 @@ public class RunKelheimScenario extends MATSimApplication {
 		"points of the fleet will be set as waiting points", defaultValue = "")
 	private String waitingPointsPath;
 
+	@CommandLine.Option(names = "--waiting-point-distance", description = "distance measure to find the nearest waiting point: ${COMPLETION-CANDIDATES}",
+		defaultValue = "euclidean")
+	private WaitingPointBasedRebalancingStrategyParams.WaitingPointDistance waitingPointDistance;
+
+	@CommandLine.Option(names = "--waiting-point-assignment", description = "assignment of idle vehicles to waiting points: ${COMPLETION-CANDIDATES}",
+		defaultValue = "greedy")
+	private WaitingPointBasedRebalancingStrategyParams.WaitingPointAssignment waitingPointAssignment;
+
+	@CommandLine.Option(names = "--demand-based-waiting-points", description = "derive the waiting point capacities per time bin from the " +
+		"requests of the previous iteration", defaultValue = "false")
+	private boolean demandBasedWaitingPoints;
+
+	@CommandLine.Option(names = "--snapshot", description = "load network and population from a binary snapshot, which is written on the " +
+		"first run with the same inputs. Remote inputs are versioned by the Last-Modified / ETag headers of a HEAD request", defaultValue = "false")
+	private boolean snapshot;
+
+	@CommandLine.Option(names = "--snapshot-dir", description = "directory of the scenario snapshots",
+		defaultValue = "${sys:user.home}/.cache/matsim-kelheim/snapshots")
+	private Path snapshotDir;
 
 	public RunKelheimScenario(@Nullable Config config) {
+		this(config, null);
+	}
+
+	RunKelheimScenario(@Nullable Config config, @Nullable SharedScenarioData sharedData) {
 		super(config);
+		this.sharedData = sharedData;
 	}
 
 	public RunKelheimScenario() {
 		super(String.format("input/v%s/kelheim-v%s-config.xml", VERSION, VERSION));
+		this.sharedData = null;
 	}
 
 	public static void main(String[] args) {
 		MATSimApplication.run(RunKelheimScenario.class, args);
 	}
 
+	private static void prepareNetwork(Network network) {
+		// the extended set is only created once per mode combination
+		AllowedModeSets modeSets = new AllowedModeSets();
+		for (Link link : network.getLinks().values()) {
+			Set<String> modes = link.getAllowedModes();
+
+			// allow freight traffic together with cars
+			if (modes.contains("car")) {
+				link.setAllowedModes(modeSets.add(modes, "freight"));
+			}
+		}
+	}
+
 	public static void addDrtCompanionParameters(DrtWithExtensionsConfigGroup drtWithExtensionsConfigGroup) {
 		DrtCompanionParams drtCompanionParams = new DrtCompanionParams();
 		drtCompanionParams.setDrtCompanionSamplingWeights(List.of(
@@ -185,6 +249,12 @@ public class RunKelheimScenario extends MATSimApplication {
 		sw.defaultParams().mapZoomLevel = 11d;
 		sw.sampleSize = sample.getSample();
 
+		// mode hierarchy of the main mode identifier, e.g. to add drt service variants
+		ConfigUtils.addOrGetModule(config, KelheimMainModeIdentifierConfigGroup.class);
+
+		// optional early termination when the run has converged
+		ConfigUtils.addOrGetModule(config, ConvergenceConfigGroup.class);
+
 		if (intermodal) {
 			ConfigUtils.addOrGetModule(config, PtIntermodalRoutingModesConfigGroup.class);
 		}
@@ -253,18 +323,42 @@ public class RunKelheimScenario extends MATSimApplication {
 	}
 
 	@Override
-	protected void prepareScenario(Scenario scenario) {
+	protected Scenario createScenario(Config config) {
+		if (sharedData != null) {
+			return sharedData.loadScenario(config, this::loadScenario, RunKelheimScenario::prepareNetwork);
+		}
+		return loadScenario(config, null);
+	}
 
-		for (Link link : scenario.getNetwork().getLinks().values()) {
-			Set<String> modes = link.getAllowedModes();
+	/**
+	 * Loads the scenario, with the given network instead of the one of the input file if it is not null.
+	 */
+	private Scenario loadScenario(Config config, @Nullable Network network) {
+		if (snapshot) {
+			return ScenarioSnapshots.loadScenario(config, snapshotDir, network);
+		}
+		if (network == null) {
+			return super.createScenario(config);
+		}
 
-			// allow freight traffic together with cars
-			if (modes.contains("car")) {
-				Set<String> newModes = Sets.newHashSet(modes);
-				newModes.add("freight");
+		String networkFile = config.network().getInputFile();
+		MutableScenario scenario;
+		try {
+			config.network().setInputFile(null);
+			scenario = (MutableScenario) super.createScenario(config);
+		} finally {
+			config.network().setInputFile(networkFile);
+		}
+		scenario.setNetwork(network);
+		return scenario;
+	}
 
-				link.setAllowedModes(newModes);
-			}
+	@Override
+	protected void prepareScenario(Scenario scenario) {
+
+		// a shared network has already been prepared when it was loaded
+		if (sharedData == null) {
+			prepareNetwork(scenario.getNetwork());
 		}
 
 		if (drt) {
@@ -276,11 +370,13 @@ public class RunKelheimScenario extends MATSimApplication {
 
 		if (bikeRnd) {
 			SplittableRandom bicycleRnd = new SplittableRandom(8765);
+			PersonDoubleAttributes.Attribute bicycleLove = PersonDoubleAttributes.get(scenario).getOrCreateAttribute("bicycleLove");
 			for (Person person : scenario.getPopulation().getPersons().values()) {
 				//TODO this value is to be determined
 				double width = 2;
 				double number = width * (bicycleRnd.nextGaussian());
 				person.getAttributes().putAttribute("bicycleLove", number);
+				bicycleLove.set(person.getId(), number);
 			}
 		}
 
@@ -302,6 +398,12 @@ public class RunKelheimScenario extends MATSimApplication {
 				bind(AnalysisMainModeIdentifier.class).to(KelheimMainModeIdentifier.class);
 				addControlerListenerBinding().to(ModeChoiceCoverageControlerListener.class);
 
+				// timings, memory and cpu usage per iteration
+				bind(PerformanceProfilingListener.class).in(Singleton.class);
+				addControlerListenerBinding().to(PerformanceProfilingListener.class);
+				addEventHandlerBinding().to(PerformanceProfilingListener.class);
+				addMobsimListenerBinding().to(PerformanceProfilingListener.class);
+
 				/*
 				if (strategy.getModeChoice() == StrategyOptions.ModeChoice.randomSubtourMode) {
 					// Configure mode-choice strategy
@@ -325,17 +427,16 @@ public class RunKelheimScenario extends MATSimApplication {
 				bind(ScoringParametersForPerson.class).to(IncomeDependentUtilityOfMoneyPersonScoringParameters.class).asEagerSingleton();
 
 				if (bikeRnd) {
+					PersonDoubleAttributes.Attribute bicycleLove = PersonDoubleAttributes.get(controler.getScenario()).getAttribute("bicycleLove");
 					addEventHandlerBinding().toInstance(new PersonDepartureEventHandler() {
 						@Inject
 						EventsManager events;
-						@Inject
-						Population population;
 
 						@Override
 						public void handleEvent(PersonDepartureEvent event) {
 							if (event.getLegMode().equals(TransportMode.bike)) {
-								double bicycleLove = (double) population.getPersons().get(event.getPersonId()).getAttributes().getAttribute("bicycleLove");
-								events.processEvent(new PersonScoreEvent(event.getTime(), event.getPersonId(), bicycleLove, "bicycleLove"));
+								events.processEvent(new PersonScoreEvent(event.getTime(), event.getPersonId(), bicycleLove.get(event.getPersonId()),
+									"bicycleLove"));
 							}
 						}
 					});
@@ -343,6 +444,20 @@ public class RunKelheimScenario extends MATSimApplication {
 			}
 		});
 
+		// reuse the raptor data of an earlier run, unless it depends on the occupancy data of the run (capacity constraints)
+		if (sharedData != null && !ConfigUtils.addOrGetModule(config, SwissRailRaptorConfigGroup.class).isUseCapacityConstraints()) {
+			controler.addOverridingModule(new AbstractModule() {
+				@Override
+				public void install() {
+					bind(SwissRailRaptor.class).toProvider(new SharedSwissRailRaptorProvider(sharedData));
+				}
+			});
+		}
+
+		if (ConfigUtils.addOrGetModule(config, ConvergenceConfigGroup.class).isEnabled()) {
+			controler.addOverridingModule(new ConvergenceModule());
+		}
+
 		if (drt) {
 			MultiModeDrtConfigGroup multiModeDrtConfig = ConfigUtils.addOrGetModule(config, MultiModeDrtConfigGroup.class);
 			controler.addOverridingModule(new DvrpModule());
@@ -361,9 +476,14 @@ public class RunKelheimScenario extends MATSimApplication {
 					maxSpeed));
 
 			for (DrtConfigGroup drtCfg : multiModeDrtConfig.getModalElements()) {
-				controler.addOverridingModule(new KelheimDrtFareModule(drtCfg, network, avFare, baseFare, surcharge));
+				controler.addOverridingModule(new KelheimDrtFareModule(drtCfg, network, avFare, baseFare, surcharge, fareMatrixFile, zoneBaseFaresFile));
 				if (rebalancing && drtCfg.mode.equals("av")) {
-					controler.addOverridingModule(new WaitingPointsBasedRebalancingModule(drtCfg, waitingPointsPath));
+					WaitingPointBasedRebalancingStrategyParams waitingPointParams = new WaitingPointBasedRebalancingStrategyParams();
+					waitingPointParams.setWaitingPointPath(waitingPointsPath);
+					waitingPointParams.setWaitingPointDistance(waitingPointDistance);
+					waitingPointParams.setWaitingPointAssignment(waitingPointAssignment);
+					waitingPointParams.setDemandBasedCapacities(demandBasedWaitingPoints);
+					controler.addOverridingModule(new WaitingPointsBasedRebalancingModule(drtCfg, waitingPointParams));
 				} else {
 					// No rebalancing strategy
 					controler.addOverridingModule(new AbstractDvrpModeModule(drtCfg.mode) {
@@ -0,0 +1,155 @@
+package org.matsim.run;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.application.MATSimAppCommand;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import picocli.CommandLine;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs the {@link RunKelheimScenario} with several random seeds. Every seed has its own population, vehicles, events and output directory
+ * {@code <output>/seed-<seed>}, which is the layout {@code CreateAverageDashboards} expects.
+ * <p>
+ * By default, the seeds run one after another in this jvm. Network, transit schedule, transit vehicles and the SwissRailRaptor data are
+ * then loaded by the first seed only and passed to the others, see {@link SharedScenarioData}. This saves their loading time for every
+ * further seed, but not memory, as the runs never overlap.
+ * <p>
+ * With {@code --parallel}, every seed runs in a jvm of its own, at most {@code parallel} at a time. MATSim's random number generator and the
+ * log file of the output directory are global in a jvm, so only separate jvms give the same results as single runs of the seeds. Nothing
+ * is shared between these jvms, their console output is written to {@code <output>/seed-<seed>.log}.
+ * <p>
+ * Arguments after {@code --} are passed to every run, e.g.
+ * {@code RunKelheimSeeds --config config.xml --seeds 1 2 3 --output output/drt --parallel 2 --jvm-args "-Xmx20G" -- --1pct --with-drt}
+ */
+@CommandLine.Command(name = "run-seeds", description = "Run the Kelheim scenario with several random seeds.")
+public class RunKelheimSeeds implements MATSimAppCommand {
+
+	private static final Logger log = LogManager.getLogger(RunKelheimSeeds.class);
+
+	@CommandLine.Option(names = "--config", description = "config path", required = true)
+	private String configPath;
+
+	@CommandLine.Option(names = "--seeds", description = "random seeds of the runs", arity = "1..*", required = true)
+	private List<Long> seeds;
+
+	@CommandLine.Option(names = "--output", description = "output root folder, each seed is written to a seed-<seed> sub folder", required = true)
+	private Path output;
+
+	@CommandLine.Option(names = "--parallel", description = "number of seeds that run concurrently, each in a jvm of its own. With 1, the seeds " +
+		"run one after another in this jvm and share network and transit data", defaultValue = "1")
+	private int parallel;
+
+	@CommandLine.Option(names = "--jvm-args", description = "arguments of the jvms of concurrent seeds, e.g. \"-Xmx20G\"", split = " ")
+	private List<String> jvmArgs = new ArrayList<>();
+
+	@CommandLine.Parameters(description = "arguments passed to every run of RunKelheimScenario")
+	private List<String> args = new ArrayList<>();
+
+	public static void main(String[] args) {
+		new RunKelheimSeeds().execute(args);
+	}
+
+	@Override
+	public Integer call() throws Exception {
+		if (parallel <= 1) {
+			SharedScenarioData sharedData = new SharedScenarioData();
+			int failed = 0;
+			for (long seed : seeds) {
+				if (runSeed(seed, sharedData) != 0) {
+					log.error("Run with seed {} failed", seed);
+					failed++;
+				}
+			}
+			return failed == 0 ? 0 : 2;
+		}
+
+		Files.createDirectories(output);
+		ExecutorService executor = Executors.newFixedThreadPool(parallel);
+		Map<Long, Future<Integer>> runs = new LinkedHashMap<>();
+		try {
+			for (long seed : seeds) {
+				runs.put(seed, executor.submit(() -> runSeedInJvm(seed)));
+			}
+
+			int failed = 0;
+			for (Map.Entry<Long, Future<Integer>> run : runs.entrySet()) {
+				try {
+					int exitCode = run.getValue().get();
+					if (exitCode != 0) {
+						log.error("Run with seed {} failed with exit code {}, see {}", run.getKey(), exitCode, getConsoleLog(run.getKey()));
+						failed++;
+					}
+				} catch (ExecutionException e) {
+					log.error("Run with seed {} failed", run.getKey(), e.getCause());
+					failed++;
+				}
+			}
+			return failed == 0 ? 0 : 2;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Runs the seed in this jvm, with the given network and transit data if they were already loaded by an earlier seed.
+	 */
+	private int runSeed(long seed, SharedScenarioData sharedData) {
+		Config config = ConfigUtils.loadConfig(configPath);
+		config.controller().setOutputDirectory(output.resolve("seed-" + seed).toString());
+
+		List<String> runArgs = new ArrayList<>();
+		runArgs.add("run");
+		runArgs.addAll(args);
+		runArgs.add("--random-seed");
+		runArgs.add(String.valueOf(seed));
+
+		log.info("Starting run with seed {}", seed);
+		int exitCode = new CommandLine(new RunKelheimScenario(config, sharedData)).execute(runArgs.toArray(new String[0]));
+		log.info("Finished run with seed {}", seed);
+		return exitCode;
+	}
+
+	/**
+	 * Runs the seed with this class in a new jvm, which has the same class path as this one.
+	 */
+	private int runSeedInJvm(long seed) throws IOException, InterruptedException {
+		List<String> command = new ArrayList<>();
+		command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+		command.addAll(jvmArgs);
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(RunKelheimSeeds.class.getName());
+		command.addAll(List.of("--config", configPath, "--seeds", String.valueOf(seed), "--output", output.toString(), "--"));
+		command.addAll(args);
+
+		log.info("Starting run with seed {} in a new jvm", seed);
+		Process process = new ProcessBuilder(command)
+			.redirectErrorStream(true)
+			.redirectOutput(getConsoleLog(seed).toFile())
+			.start();
+		try {
+			int exitCode = process.waitFor();
+			log.info("Finished run with seed {}", seed);
+			return exitCode;
+		} finally {
+			process.destroy();
+		}
+	}
+
+	private Path getConsoleLog(long seed) {
+		return output.resolve("seed-" + seed + ".log");
+	}
+}
@@ -0,0 +1,78 @@
+package org.matsim.run;
+
+import ch.sbb.matsim.routing.pt.raptor.SwissRailRaptorData;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.core.config.Config;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.scenario.MutableScenario;
+import org.matsim.pt.transitSchedule.api.TransitSchedule;
+import org.matsim.vehicles.Vehicles;
+
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Network, transit schedule, transit vehicles and SwissRailRaptor data that are loaded once and passed to all runs of the same config that
+ * run one after another in a jvm, see {@link RunKelheimSeeds}. The first run loads its scenario as usual and prepares the network, all
+ * other runs only load their population, vehicles etc. and get the shared instances. These must not be modified by the runs.
+ */
+final class SharedScenarioData {
+
+	private Network network;
+	private TransitSchedule transitSchedule;
+	private Vehicles transitVehicles;
+	private SwissRailRaptorData raptorData;
+
+	/**
+	 * Loads the scenario with the shared network and transit data. Only the run that loads these applies the network preparation.
+	 * The loader gets the shared network, or null for the first run, and must use the given network instead of loading one. The network
+	 * input file stays set in the config, so that it can still be used e.g. as key of a scenario snapshot.
+	 */
+	Scenario loadScenario(Config config, BiFunction<Config, Network, Scenario> loader, Consumer<Network> networkPreparation) {
+		synchronized (this) {
+			if (network == null) {
+				Scenario scenario = loader.apply(config, null);
+				networkPreparation.accept(scenario.getNetwork());
+
+				// the spatial indices of the network are created lazily, build them before the network is shared
+				Coord coord = scenario.getNetwork().getNodes().values().iterator().next().getCoord();
+				NetworkUtils.getNearestNode(scenario.getNetwork(), coord);
+				NetworkUtils.getNearestLink(scenario.getNetwork(), coord);
+
+				network = scenario.getNetwork();
+				transitSchedule = scenario.getTransitSchedule();
+				transitVehicles = scenario.getTransitVehicles();
+				return scenario;
+			}
+		}
+
+		String transitScheduleFile = config.transit().getTransitScheduleFile();
+		String transitVehiclesFile = config.transit().getVehiclesFile();
+		MutableScenario scenario;
+		try {
+			config.transit().setTransitScheduleFile(null);
+			config.transit().setVehiclesFile(null);
+			scenario = (MutableScenario) loader.apply(config, network);
+		} finally {
+			config.transit().setTransitScheduleFile(transitScheduleFile);
+			config.transit().setVehiclesFile(transitVehiclesFile);
+		}
+
+		scenario.setTransitSchedule(transitSchedule);
+		scenario.setTransitVehicles(transitVehicles);
+		return scenario;
+	}
+
+	/**
+	 * Returns the raptor data, which is created by the first caller.
+	 */
+	synchronized SwissRailRaptorData getRaptorData(Supplier<SwissRailRaptorData> factory) {
+		if (raptorData == null) {
+			raptorData = factory.get();
+		}
+		return raptorData;
+	}
+}
@@ -0,0 +1,61 @@
+package org.matsim.run;
+
+import ch.sbb.matsim.routing.pt.raptor.OccupancyData;
+import ch.sbb.matsim.routing.pt.raptor.RaptorInVehicleCostCalculator;
+import ch.sbb.matsim.routing.pt.raptor.RaptorParametersForPerson;
+import ch.sbb.matsim.routing.pt.raptor.RaptorRouteSelector;
+import ch.sbb.matsim.routing.pt.raptor.RaptorStopFinder;
+import ch.sbb.matsim.routing.pt.raptor.RaptorTransferCostCalculator;
+import ch.sbb.matsim.routing.pt.raptor.RaptorUtils;
+import ch.sbb.matsim.routing.pt.raptor.SwissRailRaptor;
+import ch.sbb.matsim.routing.pt.raptor.SwissRailRaptorData;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.core.config.Config;
+
+/**
+ * Creates the {@link SwissRailRaptor} like the factory of the {@code SwissRailRaptorModule}, but with the raptor data of
+ * {@link SharedScenarioData}, so that it is only built by the first run. Everything that depends on the person or the run (parameters,
+ * stop finder, cost calculators) is still injected per run. Not to be used with capacity constraints, as the raptor data then refers to
+ * the occupancy data of the run that created it.
+ */
+final class SharedSwissRailRaptorProvider implements Provider<SwissRailRaptor> {
+
+	private final SharedScenarioData sharedData;
+
+	@Inject
+	private Scenario scenario;
+	@Inject
+	private Config config;
+	@Inject
+	private RaptorParametersForPerson parametersForPerson;
+	@Inject
+	private RaptorRouteSelector routeSelector;
+	@Inject
+	private Provider<RaptorStopFinder> stopFinderProvider;
+	@Inject
+	private RaptorInVehicleCostCalculator inVehicleCostCalculator;
+	@Inject
+	private RaptorTransferCostCalculator transferCostCalculator;
+	@Inject
+	private OccupancyData occupancyData;
+
+	SharedSwissRailRaptorProvider(SharedScenarioData sharedData) {
+		this.sharedData = sharedData;
+	}
+
+	@Override
+	public SwissRailRaptor get() {
+		SwissRailRaptorData data = sharedData.getRaptorData(() -> SwissRailRaptorData.create(scenario.getTransitSchedule(),
+			scenario.getTransitVehicles(), RaptorUtils.createStaticConfig(config), scenario.getNetwork(), occupancyData));
+
+		return new SwissRailRaptor.Builder(data, config)
+			.with(parametersForPerson)
+			.with(routeSelector)
+			.with(stopFinderProvider.get())
+			.with(inVehicleCostCalculator)
+			.with(transferCostCalculator)
+			.build();
+	}
+}
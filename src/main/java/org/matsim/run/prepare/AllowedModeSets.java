@@ -0,0 +1,53 @@
+package org.matsim.run.prepare;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Adds modes to or removes modes from the allowed mode sets of links. Links already share one set instance per mode combination
+ * ({@link org.matsim.api.core.v01.network.Link#setAllowedModes} canonicalizes the sets), so the result of adding or removing a mode is
+ * cached per such instance and a new set is only created the first time a combination occurs, instead of copying the set for every link.
+ * Not thread-safe.
+ */
+public final class AllowedModeSets {
+
+	/**
+	 * Results of adding / removing a mode (inner key), per mode set instance (outer key).
+	 */
+	private final Map<Set<String>, Map<String, Set<String>>> additions = new IdentityHashMap<>();
+	private final Map<Set<String>, Map<String, Set<String>>> removals = new IdentityHashMap<>();
+
+	/**
+	 * Returns the modes plus the given mode.
+	 */
+	public Set<String> add(Set<String> modes, String mode) {
+		return transition(additions, modes, mode, true);
+	}
+
+	/**
+	 * Returns the modes without the given mode.
+	 */
+	public Set<String> remove(Set<String> modes, String mode) {
+		return transition(removals, modes, mode, false);
+	}
+
+	private static Set<String> transition(Map<Set<String>, Map<String, Set<String>>> transitions, Set<String> modes, String mode, boolean add) {
+		Map<String, Set<String>> results = transitions.computeIfAbsent(modes, k -> new HashMap<>());
+		Set<String> result = results.get(mode);
+		if (result == null) {
+			Set<String> changed = new HashSet<>(modes);
+			if (add) {
+				changed.add(mode);
+			} else {
+				changed.remove(mode);
+			}
+			result = Collections.unmodifiableSet(changed);
+			results.put(mode, result);
+		}
+		return result;
+	}
+}
@@ -101,6 +101,7 @@ public final class DrtStopsWriter extends MatsimXmlWriter {
 				"repos/public-svn/matsim/scenarios/countries/de/kelheim/original-data/" +
 				"KEXI_Haltestellen_Liste_Kelheim_utm32n_withLinkIds.csv");
 		Set<Id<Link>> allLinks = new HashSet<>();
+		LinkSnapper linkSnapper = new LinkSnapper(network, Set.of(mode));
 
 		CSVFormat.Builder format = CSVFormat.DEFAULT.builder().setDelimiter(';').setHeader().setSkipHeaderRecord(true);
 
@@ -117,7 +118,7 @@ public final class DrtStopsWriter extends MatsimXmlWriter {
 					if (row.get("linkId_v" + RunKelheimScenario.VERSION)!=null){
 						link = network.getLinks().get(Id.createLinkId(row.get("linkId_v" + RunKelheimScenario.VERSION)));
 					} else {
-						link = getStopLink(coord, network);
+						link = getStopLink(coord, linkSnapper);
 					}
 					allLinks.add(link.getId());
 					attributes.add(createTuple("linkRefId", link.getId().toString()));
@@ -160,20 +161,8 @@ public final class DrtStopsWriter extends MatsimXmlWriter {
 		NetworkUtils.writeNetwork(network, outputFolder + "/" + mode + "-stops-links.xml.gz");
 	}
 
-	private Link getStopLink(Coord coord, Network network) {
-		double shortestDistance = Double.MAX_VALUE;
-		Link nearestLink = null;
-		for (Link link : network.getLinks().values()) {
-			if (!link.getAllowedModes().contains(mode)) {
-				continue;
-			}
-			double dist = CoordUtils.distancePointLinesegment(link.getFromNode().getCoord(), link.getToNode().getCoord(), coord);
-			if (dist < shortestDistance) {
-				shortestDistance = dist;
-				nearestLink = link;
-			}
-		}
-
+	private static Link getStopLink(Coord coord, LinkSnapper linkSnapper) {
+		Link nearestLink = linkSnapper.snap(coord);
 
 		double distanceToFromNode = CoordUtils.calcEuclideanDistance(nearestLink.getFromNode().getCoord(), coord);
 		double distanceToToNode = CoordUtils.calcEuclideanDistance(nearestLink.getToNode().getCoord(), coord);
@@ -0,0 +1,88 @@
+package org.matsim.run.prepare;
+
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.index.strtree.ItemBoundable;
+import org.locationtech.jts.index.strtree.STRtree;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.core.utils.geometry.CoordUtils;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+/**
+ * Snaps coordinates to the nearest link of a network, i.e. the link with the smallest distance between the coordinate and the straight
+ * segment from its from-node to its to-node (as {@link org.matsim.core.network.NetworkUtils#getNearestLinkExactly}). The segments are
+ * indexed once in an STR-tree, so that a query only looks at the links close to the coordinate instead of all links.
+ * The index is not changed after construction and can be queried by several threads, links added to or removed from the network later
+ * are not considered.
+ */
+public final class LinkSnapper {
+
+	private final STRtree index = new STRtree();
+	private final int size;
+
+	/**
+	 * Indexes all links of the network.
+	 */
+	public LinkSnapper(Network network) {
+		this(network, Collections.emptySet());
+	}
+
+	/**
+	 * Indexes the links of the network that allow at least one of the given modes, or all links if no modes are given.
+	 */
+	public LinkSnapper(Network network, Set<String> modes) {
+		int links = 0;
+		for (Link link : network.getLinks().values()) {
+			if (!modes.isEmpty() && Collections.disjoint(link.getAllowedModes(), modes)) {
+				continue;
+			}
+			Coord from = link.getFromNode().getCoord();
+			Coord to = link.getToNode().getCoord();
+			index.insert(new Envelope(from.getX(), to.getX(), from.getY(), to.getY()), link);
+			links++;
+		}
+		this.size = links;
+		// the tree is otherwise built lazily by the first query, which is not thread-safe
+		index.build();
+	}
+
+	/**
+	 * Number of indexed links.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the link nearest to the coordinate, or null if no link is indexed.
+	 */
+	public Link snap(Coord coord) {
+		if (size == 0) {
+			return null;
+		}
+		return (Link) index.nearestNeighbour(new Envelope(coord.getX(), coord.getX(), coord.getY(), coord.getY()), coord, LinkSnapper::distance);
+	}
+
+	/**
+	 * Snaps all coordinates in parallel. The link at position i of the result is the nearest link of the coordinate at position i.
+	 */
+	public Link[] snap(Coord[] coords) {
+		Link[] links = new Link[coords.length];
+		IntStream.range(0, coords.length).parallel().forEach(i -> links[i] = snap(coords[i]));
+		return links;
+	}
+
+	/**
+	 * Distance between a link of the tree and the coordinate of the query, in either order.
+	 */
+	private static double distance(ItemBoundable item1, ItemBoundable item2) {
+		if (item1.getItem() instanceof Link link) {
+			return CoordUtils.distancePointLinesegment(link.getFromNode().getCoord(), link.getToNode().getCoord(), (Coord) item2.getItem());
+		}
+		return distance(item2, item1);
+	}
+}
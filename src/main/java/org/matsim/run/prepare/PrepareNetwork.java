@@ -16,7 +16,6 @@ import org.matsim.core.network.NetworkUtils;
 import org.matsim.core.utils.geometry.geotools.MGC;
 import picocli.CommandLine;
 
-import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -61,6 +60,7 @@ public class PrepareNetwork implements MATSimAppCommand {
 
 	private void prepareNetworkBlockedRoad(Network network) {
 		Geometry blockedRoadArea = shp.getGeometry();
+		AllowedModeSets modeSets = new AllowedModeSets();
 
 		GeometryFactory gf = new GeometryFactory();
 
@@ -89,10 +89,9 @@ public class PrepareNetwork implements MATSimAppCommand {
 			//if we block the bridge between AS and DP we need to have 2 separate AV modes
 			if (shp.getShapeFile().toString().contains("Maximiliansbruecke")) {
 				if (link.getAllowedModes().contains("av")) {
-					Set<String> allowedModes = new HashSet<>(link.getAllowedModes());
-					allowedModes.remove("av");
-					allowedModes.add("avDP");
-					allowedModes.add("avAS");
+					Set<String> allowedModes = modeSets.remove(link.getAllowedModes(), "av");
+					allowedModes = modeSets.add(allowedModes, "avDP");
+					allowedModes = modeSets.add(allowedModes, "avAS");
 					link.setAllowedModes(allowedModes);
 				}
 			}
@@ -129,6 +128,7 @@ public class PrepareNetwork implements MATSimAppCommand {
 		boolean isDrtAllowed;
 		boolean isAvAllowed;
 		int[] linkCount = new int[2];
+		AllowedModeSets modeSets = new AllowedModeSets();
 
 		for (Link link : network.getLinks().values()) {
 			if (!link.getAllowedModes().contains("car")) {
@@ -150,26 +150,20 @@ public class PrepareNetwork implements MATSimAppCommand {
 			}
 
 			if (isDrtAllowed) {
-				Set<String> allowedModes = new HashSet<>(link.getAllowedModes());
-
-				if (!allowedModes.contains(TransportMode.drt)) {
-					allowedModes.add(TransportMode.drt);
-					link.setAllowedModes(allowedModes);
+				if (!link.getAllowedModes().contains(TransportMode.drt)) {
+					link.setAllowedModes(modeSets.add(link.getAllowedModes(), TransportMode.drt));
 					linkCount[0] = linkCount[0] + 1;
 				}
 			}
 
-			Set<String> allowedModes = new HashSet<>(link.getAllowedModes());
 			if (isAvAllowed) {
-				if (!allowedModes.contains("av")) {
-					allowedModes.add("av");
-					link.setAllowedModes(allowedModes);
+				if (!link.getAllowedModes().contains("av")) {
+					link.setAllowedModes(modeSets.add(link.getAllowedModes(), "av"));
 					linkCount[1] = linkCount[1] + 1;
 				}
 			} else {
-				if (allowedModes.contains("av")) {
-					allowedModes.remove("av");
-					link.setAllowedModes(allowedModes);
+				if (link.getAllowedModes().contains("av")) {
+					link.setAllowedModes(modeSets.remove(link.getAllowedModes(), "av"));
 				}
 			}
 		}
@@ -0,0 +1,283 @@
+package org.matsim.run.snapshot;
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.NetworkFactory;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.api.core.v01.population.PopulationFactory;
+import org.matsim.api.core.v01.population.Route;
+import org.matsim.core.population.routes.NetworkRoute;
+import org.matsim.core.population.routes.RouteFactories;
+import org.matsim.core.router.StageActivityTypeIdentifier;
+import org.matsim.facilities.ActivityFacility;
+import org.matsim.utils.objectattributes.ObjectAttributesConverter;
+import org.matsim.utils.objectattributes.attributable.Attributes;
+import org.matsim.vehicles.Vehicle;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Reads a snapshot written by {@link ScenarioSnapshotWriter} directly from a (memory mapped) buffer into the network and the population of a
+ * scenario, which are expected to be empty.
+ */
+final class ScenarioSnapshotReader {
+
+	private final ByteBuffer buffer;
+	private final List<String> strings = new ArrayList<>();
+	private final ObjectAttributesConverter converter = new ObjectAttributesConverter();
+
+	ScenarioSnapshotReader(ByteBuffer buffer) {
+		this.buffer = buffer;
+	}
+
+	void read(Scenario scenario) throws IOException {
+		readHeader();
+		readNetwork(scenario.getNetwork());
+		strings.clear();
+		readPopulation(scenario.getPopulation());
+	}
+
+	/**
+	 * Reads only the population, the network of the scenario is not touched.
+	 */
+	void readPopulation(Scenario scenario) throws IOException {
+		readHeader();
+		long populationOffset = buffer.getLong(buffer.limit() - Long.BYTES);
+		if (populationOffset < buffer.position() || populationOffset >= buffer.limit()) {
+			throw new IOException("Invalid population offset " + populationOffset);
+		}
+		buffer.position((int) populationOffset);
+		readPopulation(scenario.getPopulation());
+	}
+
+	private void readHeader() throws IOException {
+		if (buffer.getInt() != ScenarioSnapshots.MAGIC) {
+			throw new IOException("Not a scenario snapshot");
+		}
+		int version = buffer.getInt();
+		if (version != ScenarioSnapshots.FORMAT_VERSION) {
+			throw new IOException("Unsupported snapshot version " + version);
+		}
+	}
+
+	private void readNetwork(Network network) throws IOException {
+		network.setName(readString());
+		network.setCapacityPeriod(buffer.getDouble());
+		network.setEffectiveLaneWidth(buffer.getDouble());
+		network.setEffectiveCellSize(buffer.getDouble());
+		readAttributes(network.getAttributes());
+
+		NetworkFactory factory = network.getFactory();
+		int nodes = buffer.getInt();
+		for (int i = 0; i < nodes; i++) {
+			Node node = factory.createNode(Id.createNodeId(readString()), readCoord());
+			readAttributes(node.getAttributes());
+			network.addNode(node);
+		}
+
+		int links = buffer.getInt();
+		for (int i = 0; i < links; i++) {
+			Id<Link> linkId = Id.createLinkId(readString());
+			Node fromNode = network.getNodes().get(Id.createNodeId(readString()));
+			Node toNode = network.getNodes().get(Id.createNodeId(readString()));
+			Link link = factory.createLink(linkId, fromNode, toNode);
+			link.setLength(buffer.getDouble());
+			link.setFreespeed(buffer.getDouble());
+			link.setCapacity(buffer.getDouble());
+			link.setNumberOfLanes(buffer.getDouble());
+
+			// setAllowedModes canonicalizes the set, so links with the same modes share one instance
+			Set<String> modes = new HashSet<>();
+			int numberOfModes = buffer.getInt();
+			for (int m = 0; m < numberOfModes; m++) {
+				modes.add(readString());
+			}
+			link.setAllowedModes(modes);
+			readAttributes(link.getAttributes());
+			network.addLink(link);
+		}
+	}
+
+	private void readPopulation(Population population) throws IOException {
+		population.setName(readString());
+		readAttributes(population.getAttributes());
+
+		PopulationFactory factory = population.getFactory();
+		int persons = buffer.getInt();
+		for (int i = 0; i < persons; i++) {
+			Person person = factory.createPerson(Id.createPersonId(readString()));
+			readAttributes(person.getAttributes());
+			int plans = buffer.getInt();
+			int selected = buffer.getInt();
+			for (int p = 0; p < plans; p++) {
+				Plan plan = readPlan(factory);
+				person.addPlan(plan);
+				if (p == selected) {
+					person.setSelectedPlan(plan);
+				}
+			}
+			population.addPerson(person);
+		}
+	}
+
+	private Plan readPlan(PopulationFactory factory) throws IOException {
+		Plan plan = factory.createPlan();
+		double score = buffer.getDouble();
+		plan.setScore(Double.isNaN(score) ? null : score);
+		plan.setType(readString());
+		readAttributes(plan.getAttributes());
+
+		int elements = buffer.getInt();
+		for (int i = 0; i < elements; i++) {
+			byte type = buffer.get();
+			if (type == ScenarioSnapshots.ACTIVITY) {
+				plan.addActivity(readActivity(factory));
+			} else if (type == ScenarioSnapshots.LEG) {
+				plan.addLeg(readLeg(factory));
+			} else {
+				throw new IOException("Unknown plan element type " + type);
+			}
+		}
+		return plan;
+	}
+
+	private Activity readActivity(PopulationFactory factory) throws IOException {
+		String type = readString();
+		Coord coord = buffer.get() != 0 ? readCoord() : null;
+		Id<Link> linkId = readId(Link.class);
+
+		Activity activity;
+		boolean stageActivity = StageActivityTypeIdentifier.isStageActivity(type);
+		if (stageActivity) {
+			// the same memory saving interaction activities the population reader creates
+			activity = coord != null ? factory.createInteractionActivityFromCoord(type, coord) : factory.createInteractionActivityFromLinkId(type, linkId);
+		} else {
+			activity = coord != null ? factory.createActivityFromCoord(type, coord) : factory.createActivityFromLinkId(type, linkId);
+		}
+		if (coord != null) {
+			activity.setLinkId(linkId);
+		}
+		activity.setFacilityId(readId(ActivityFacility.class));
+
+		double startTime = buffer.getDouble();
+		double endTime = buffer.getDouble();
+		double maxDuration = buffer.getDouble();
+		if (!stageActivity) {
+			if (!Double.isNaN(startTime)) {
+				activity.setStartTime(startTime);
+			}
+			if (!Double.isNaN(endTime)) {
+				activity.setEndTime(endTime);
+			}
+			if (!Double.isNaN(maxDuration)) {
+				activity.setMaximumDuration(maxDuration);
+			}
+		}
+		readAttributes(activity.getAttributes());
+		return activity;
+	}
+
+	private Leg readLeg(PopulationFactory factory) throws IOException {
+		Leg leg = factory.createLeg(readString());
+		leg.setRoutingMode(readString());
+		double departureTime = buffer.getDouble();
+		if (!Double.isNaN(departureTime)) {
+			leg.setDepartureTime(departureTime);
+		}
+		double travelTime = buffer.getDouble();
+		if (!Double.isNaN(travelTime)) {
+			leg.setTravelTime(travelTime);
+		}
+		readAttributes(leg.getAttributes());
+
+		if (buffer.get() != 0) {
+			String routeType = readString();
+			RouteFactories routeFactories = factory.getRouteFactories();
+			Route route = routeFactories.createRoute(routeFactories.getRouteClassForType(routeType), readId(Link.class), readId(Link.class));
+			double routeTravelTime = buffer.getDouble();
+			if (!Double.isNaN(routeTravelTime)) {
+				route.setTravelTime(routeTravelTime);
+			}
+			route.setDistance(buffer.getDouble());
+			String description = readLongString();
+			if (description != null) {
+				route.setRouteDescription(description);
+			}
+			Id<Vehicle> vehicleId = readId(Vehicle.class);
+			if (route instanceof NetworkRoute networkRoute) {
+				networkRoute.setVehicleId(vehicleId);
+			}
+			leg.setRoute(route);
+		}
+		return leg;
+	}
+
+	private Coord readCoord() {
+		double x = buffer.getDouble();
+		double y = buffer.getDouble();
+		double z = buffer.getDouble();
+		return Double.isNaN(z) ? new Coord(x, y) : new Coord(x, y, z);
+	}
+
+	private void readAttributes(Attributes attributes) throws IOException {
+		int size = buffer.getInt();
+		for (int i = 0; i < size; i++) {
+			String name = readString();
+			String className = readString();
+			Object value = converter.convert(className, readLongString());
+			if (value == null) {
+				throw new IOException("Cannot convert attribute " + name + " of type " + className);
+			}
+			attributes.putAttribute(name, value);
+		}
+	}
+
+	@Nullable
+	private <T> Id<T> readId(Class<T> type) throws IOException {
+		String id = readString();
+		return id == null ? null : Id.create(id, type);
+	}
+
+	@Nullable
+	private String readString() throws IOException {
+		int index = buffer.getInt();
+		if (index == ScenarioSnapshots.NULL_STRING) {
+			return null;
+		}
+		if (index == ScenarioSnapshots.NEW_STRING) {
+			String string = readLongString();
+			strings.add(string);
+			return string;
+		}
+		if (index < 0 || index >= strings.size()) {
+			throw new IOException("Invalid string reference " + index);
+		}
+		return strings.get(index);
+	}
+
+	@Nullable
+	private String readLongString() {
+		int length = buffer.getInt();
+		if (length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
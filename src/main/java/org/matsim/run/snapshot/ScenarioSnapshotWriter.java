@@ -0,0 +1,211 @@
+package org.matsim.run.snapshot;
+
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.api.core.v01.population.Route;
+import org.matsim.core.population.routes.NetworkRoute;
+import org.matsim.core.utils.misc.OptionalTime;
+import org.matsim.utils.objectattributes.ObjectAttributesConverter;
+import org.matsim.utils.objectattributes.attributable.Attributes;
+
+import javax.annotation.Nullable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Writes the network and the population of a scenario in the binary snapshot format, see {@link ScenarioSnapshots}.
+ * Strings that repeat (ids, modes, activity types, attribute names) are written once and then referenced by their index. Network and
+ * population have separate string tables and the file ends with the offset of the population, so that the population can be read
+ * without the network.
+ */
+final class ScenarioSnapshotWriter {
+
+	private final DataOutputStream out;
+	private final Object2IntMap<String> strings = new Object2IntOpenHashMap<>();
+	private final ObjectAttributesConverter converter = new ObjectAttributesConverter();
+
+	ScenarioSnapshotWriter(DataOutputStream out) {
+		this.out = out;
+		strings.defaultReturnValue(ScenarioSnapshots.NEW_STRING);
+	}
+
+	void write(Scenario scenario) throws IOException {
+		out.writeInt(ScenarioSnapshots.MAGIC);
+		out.writeInt(ScenarioSnapshots.FORMAT_VERSION);
+		writeNetwork(scenario.getNetwork());
+
+		strings.clear();
+		int populationOffset = out.size();
+		writePopulation(scenario.getPopulation());
+		out.writeLong(populationOffset);
+	}
+
+	private void writeNetwork(Network network) throws IOException {
+		writeString(network.getName());
+		out.writeDouble(network.getCapacityPeriod());
+		out.writeDouble(network.getEffectiveLaneWidth());
+		out.writeDouble(network.getEffectiveCellSize());
+		writeAttributes(network.getAttributes());
+
+		out.writeInt(network.getNodes().size());
+		for (Node node : network.getNodes().values()) {
+			writeString(node.getId().toString());
+			writeCoord(node.getCoord());
+			writeAttributes(node.getAttributes());
+		}
+
+		out.writeInt(network.getLinks().size());
+		for (Link link : network.getLinks().values()) {
+			writeString(link.getId().toString());
+			writeString(link.getFromNode().getId().toString());
+			writeString(link.getToNode().getId().toString());
+			out.writeDouble(link.getLength());
+			out.writeDouble(link.getFreespeed());
+			out.writeDouble(link.getCapacity());
+			out.writeDouble(link.getNumberOfLanes());
+			out.writeInt(link.getAllowedModes().size());
+			for (String mode : link.getAllowedModes()) {
+				writeString(mode);
+			}
+			writeAttributes(link.getAttributes());
+		}
+	}
+
+	private void writePopulation(Population population) throws IOException {
+		writeString(population.getName());
+		writeAttributes(population.getAttributes());
+
+		out.writeInt(population.getPersons().size());
+		for (Person person : population.getPersons().values()) {
+			writeString(person.getId().toString());
+			writeAttributes(person.getAttributes());
+			out.writeInt(person.getPlans().size());
+			out.writeInt(person.getPlans().indexOf(person.getSelectedPlan()));
+			for (Plan plan : person.getPlans()) {
+				writePlan(plan);
+			}
+		}
+	}
+
+	private void writePlan(Plan plan) throws IOException {
+		out.writeDouble(plan.getScore() == null ? Double.NaN : plan.getScore());
+		writeString(plan.getType());
+		writeAttributes(plan.getAttributes());
+		out.writeInt(plan.getPlanElements().size());
+		for (PlanElement planElement : plan.getPlanElements()) {
+			if (planElement instanceof Activity activity) {
+				out.writeByte(ScenarioSnapshots.ACTIVITY);
+				writeActivity(activity);
+			} else if (planElement instanceof Leg leg) {
+				out.writeByte(ScenarioSnapshots.LEG);
+				writeLeg(leg);
+			} else {
+				throw new IllegalArgumentException("Unknown plan element " + planElement);
+			}
+		}
+	}
+
+	private void writeActivity(Activity activity) throws IOException {
+		writeString(activity.getType());
+		out.writeBoolean(activity.getCoord() != null);
+		if (activity.getCoord() != null) {
+			writeCoord(activity.getCoord());
+		}
+		writeId(activity.getLinkId());
+		writeId(activity.getFacilityId());
+		writeTime(activity.getStartTime());
+		writeTime(activity.getEndTime());
+		writeTime(activity.getMaximumDuration());
+		writeAttributes(activity.getAttributes());
+	}
+
+	private void writeLeg(Leg leg) throws IOException {
+		writeString(leg.getMode());
+		writeString(leg.getRoutingMode());
+		writeTime(leg.getDepartureTime());
+		writeTime(leg.getTravelTime());
+		writeAttributes(leg.getAttributes());
+
+		Route route = leg.getRoute();
+		out.writeBoolean(route != null);
+		if (route != null) {
+			writeString(route.getRouteType());
+			writeId(route.getStartLinkId());
+			writeId(route.getEndLinkId());
+			writeTime(route.getTravelTime());
+			out.writeDouble(route.getDistance());
+			// route descriptions (e.g. the link sequence) are mostly unique, so they are not added to the string table
+			writeLongString(route.getRouteDescription());
+			writeId(route instanceof NetworkRoute networkRoute ? networkRoute.getVehicleId() : null);
+		}
+	}
+
+	private void writeCoord(Coord coord) throws IOException {
+		out.writeDouble(coord.getX());
+		out.writeDouble(coord.getY());
+		out.writeDouble(coord.hasZ() ? coord.getZ() : Double.NaN);
+	}
+
+	private void writeTime(OptionalTime time) throws IOException {
+		out.writeDouble(time.isDefined() ? time.seconds() : Double.NaN);
+	}
+
+	private void writeAttributes(Attributes attributes) throws IOException {
+		Map<String, Object> map = attributes.getAsMap();
+		out.writeInt(map.size());
+		for (Map.Entry<String, Object> attribute : map.entrySet()) {
+			// a snapshot without the attribute would differ from the input files, so no snapshot is written at all
+			String value = converter.convertToString(attribute.getValue());
+			if (value == null) {
+				throw new IllegalArgumentException("Attribute " + attribute.getKey() + " of type " + attribute.getValue().getClass().getName()
+					+ " can not be converted to a string");
+			}
+			writeString(attribute.getKey());
+			writeString(attribute.getValue().getClass().getName());
+			writeLongString(value);
+		}
+	}
+
+	private void writeId(@Nullable Id<?> id) throws IOException {
+		writeString(id == null ? null : id.toString());
+	}
+
+	private void writeString(@Nullable String string) throws IOException {
+		if (string == null) {
+			out.writeInt(ScenarioSnapshots.NULL_STRING);
+			return;
+		}
+		int index = strings.getInt(string);
+		if (index == ScenarioSnapshots.NEW_STRING) {
+			strings.put(string, strings.size());
+			out.writeInt(ScenarioSnapshots.NEW_STRING);
+			writeLongString(string);
+		} else {
+			out.writeInt(index);
+		}
+	}
+
+	private void writeLongString(@Nullable String string) throws IOException {
+		if (string == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+}
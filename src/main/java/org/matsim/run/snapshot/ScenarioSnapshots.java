@@ -0,0 +1,281 @@
+package org.matsim.run.snapshot;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigGroup;
+import org.matsim.core.config.groups.FacilitiesConfigGroup;
+import org.matsim.core.scenario.MutableScenario;
+import org.matsim.core.scenario.ScenarioUtils;
+
+import javax.annotation.Nullable;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.EnumSet;
+import java.util.HexFormat;
+import java.util.Set;
+
+/**
+ * Cache of binary scenario snapshots. Parsing the gzipped xml network and plans takes most of the time before the first iteration starts,
+ * so the loaded network and population are written to a compact binary file once and memory mapped by all later runs with the same inputs.
+ * <p>
+ * The snapshot is keyed by a hash over the input files (location, size and modification time) and the coordinate systems, so changing
+ * any of them creates a new snapshot. For remote (http/https) inputs, the size, {@code Last-Modified} and {@code ETag} headers of a HEAD
+ * request are used instead. If a remote input does not provide any of these headers or cannot be reached, no snapshot is used, as a
+ * changed file could not be detected. Everything else (transit schedule, vehicles, facilities, ...) is loaded as usual.
+ * <p>
+ * Runs that share an already loaded network only read the population from the snapshot, see {@link #loadScenario(Config, Path, Network)}.
+ */
+public final class ScenarioSnapshots {
+
+	static final int MAGIC = 0x4d53534e;
+	/**
+	 * Increase when the format changes, this invalidates all existing snapshots.
+	 */
+	static final int FORMAT_VERSION = 2;
+
+	static final int NULL_STRING = -1;
+	static final int NEW_STRING = -2;
+
+	static final byte ACTIVITY = 0;
+	static final byte LEG = 1;
+
+	private static final Logger log = LogManager.getLogger(ScenarioSnapshots.class);
+
+	private static final int HEAD_TIMEOUT_MS = 10_000;
+
+	/**
+	 * Facility sources that do not depend on the population while loading.
+	 */
+	private static final Set<FacilitiesConfigGroup.FacilitiesSource> SUPPORTED_FACILITY_SOURCES = EnumSet.of(
+		FacilitiesConfigGroup.FacilitiesSource.none, FacilitiesConfigGroup.FacilitiesSource.fromFile,
+		FacilitiesConfigGroup.FacilitiesSource.setInScenario);
+
+	private ScenarioSnapshots() {
+	}
+
+	/**
+	 * Loads the scenario like {@link ScenarioUtils#loadScenario(Config)}, but reads network and population from the snapshot in the given
+	 * directory if there is one for the current inputs. Otherwise, they are loaded from the input files and the snapshot is written.
+	 */
+	public static Scenario loadScenario(Config config, Path directory) {
+		return loadScenario(config, directory, null);
+	}
+
+	/**
+	 * Like {@link #loadScenario(Config, Path)}, but if a network is given, it is set in the scenario instead of loading one and only the
+	 * population is read from the snapshot. The snapshot is still keyed by the network input file of the config, which therefore must be
+	 * set. No snapshot is written in this case, as the given network may differ from the input file.
+	 */
+	public static Scenario loadScenario(Config config, Path directory, @Nullable Network network) {
+		if (config.network().isTimeVariantNetwork() || config.network().getInputFile() == null || config.plans().getInputFile() == null
+			|| !SUPPORTED_FACILITY_SOURCES.contains(config.facilities().getFacilitiesSource())) {
+			log.warn("Scenario snapshots are not supported for this config, loading the scenario from the input files.");
+			return loadFromInputFiles(config, network);
+		}
+
+		String key = createKey(config);
+		if (key == null) {
+			log.warn("The version of the remote network or plans file can not be determined, loading the scenario from the input files.");
+			return loadFromInputFiles(config, network);
+		}
+
+		Path snapshot = directory.resolve("scenario-" + key + ".bin");
+		if (Files.isRegularFile(snapshot)) {
+			Scenario scenario = loadWithoutNetworkAndPopulation(config);
+			try {
+				if (network == null) {
+					read(snapshot, scenario, false);
+					log.info("Loaded network and population from snapshot {}", snapshot);
+				} else {
+					((MutableScenario) scenario).setNetwork(network);
+					read(snapshot, scenario, true);
+					log.info("Loaded population from snapshot {}, using the shared network", snapshot);
+				}
+				return scenario;
+			} catch (IOException | RuntimeException e) {
+				log.warn("Could not read snapshot {}, loading the scenario from the input files.", snapshot, e);
+			}
+		}
+
+		if (network != null) {
+			log.info("No snapshot {} for the shared network, loading the population from the input files.", snapshot);
+			return loadFromInputFiles(config, network);
+		}
+
+		Scenario scenario = ScenarioUtils.loadScenario(config);
+		try {
+			write(snapshot, scenario);
+			log.info("Wrote scenario snapshot {}", snapshot);
+		} catch (IOException | RuntimeException e) {
+			log.warn("Could not write snapshot {}: {}", snapshot, e.getMessage(), e);
+		}
+		return scenario;
+	}
+
+	/**
+	 * Loads the scenario without snapshot, the network is only loaded from its input file if none is given.
+	 */
+	private static Scenario loadFromInputFiles(Config config, @Nullable Network network) {
+		if (network == null) {
+			return ScenarioUtils.loadScenario(config);
+		}
+
+		String networkFile = config.network().getInputFile();
+		MutableScenario scenario;
+		try {
+			config.network().setInputFile(null);
+			scenario = (MutableScenario) ScenarioUtils.loadScenario(config);
+		} finally {
+			config.network().setInputFile(networkFile);
+		}
+		scenario.setNetwork(network);
+		return scenario;
+	}
+
+	/**
+	 * Loads everything except network and population, which are left empty.
+	 */
+	private static Scenario loadWithoutNetworkAndPopulation(Config config) {
+		String network = config.network().getInputFile();
+		String plans = config.plans().getInputFile();
+		try {
+			config.network().setInputFile(null);
+			config.plans().setInputFile(null);
+			return ScenarioUtils.loadScenario(config);
+		} finally {
+			config.network().setInputFile(network);
+			config.plans().setInputFile(plans);
+		}
+	}
+
+	private static void read(Path snapshot, Scenario scenario, boolean populationOnly) throws IOException {
+		try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Snapshot is too large to be mapped");
+			}
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			ScenarioSnapshotReader reader = new ScenarioSnapshotReader(buffer);
+			if (populationOnly) {
+				reader.readPopulation(scenario);
+			} else {
+				reader.read(scenario);
+			}
+		}
+	}
+
+	/**
+	 * Writes to a temporary file first, so that concurrent runs never see a partially written snapshot.
+	 */
+	private static void write(Path snapshot, Scenario scenario) throws IOException {
+		Files.createDirectories(snapshot.getParent());
+		Path tmp = Files.createTempFile(snapshot.getParent(), snapshot.getFileName().toString(), ".tmp");
+		try {
+			try (OutputStream os = Files.newOutputStream(tmp);
+				 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os, 1 << 16))) {
+				new ScenarioSnapshotWriter(out).write(scenario);
+			}
+			Files.move(tmp, snapshot, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	/**
+	 * Hash over everything that determines the loaded network and population, or null if the version of an input file can not be determined.
+	 */
+	@Nullable
+	static String createKey(Config config) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+
+		update(digest, String.valueOf(FORMAT_VERSION));
+		update(digest, config.global().getCoordinateSystem());
+		update(digest, config.network().getInputCRS());
+		update(digest, config.plans().getInputCRS());
+		update(digest, String.valueOf(config.plans().getRemovingUnneccessaryPlanAttributes()));
+		if (!updateFile(digest, ConfigGroup.getInputFileURL(config.getContext(), config.network().getInputFile()))
+			|| !updateFile(digest, ConfigGroup.getInputFileURL(config.getContext(), config.plans().getInputFile()))) {
+			return null;
+		}
+
+		return HexFormat.of().formatHex(digest.digest(), 0, 16);
+	}
+
+	/**
+	 * Adds location and version of the file to the hash, returns false if the version can not be determined.
+	 */
+	private static boolean updateFile(MessageDigest digest, URL url) {
+		update(digest, url.toString());
+		return switch (url.getProtocol()) {
+			case "file" -> {
+				try {
+					File file = new File(url.toURI());
+					update(digest, String.valueOf(file.length()));
+					update(digest, String.valueOf(file.lastModified()));
+					yield true;
+				} catch (URISyntaxException e) {
+					throw new IllegalArgumentException("Invalid input file " + url, e);
+				}
+			}
+			case "http", "https" -> updateRemoteFile(digest, url);
+			default -> false;
+		};
+	}
+
+	private static boolean updateRemoteFile(MessageDigest digest, URL url) {
+		HttpURLConnection connection = null;
+		try {
+			connection = (HttpURLConnection) url.openConnection();
+			connection.setRequestMethod("HEAD");
+			connection.setConnectTimeout(HEAD_TIMEOUT_MS);
+			connection.setReadTimeout(HEAD_TIMEOUT_MS);
+			if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+				log.warn("HEAD request to {} returned {}", url, connection.getResponseCode());
+				return false;
+			}
+			String lastModified = connection.getHeaderField("Last-Modified");
+			String etag = connection.getHeaderField("ETag");
+			if (lastModified == null && etag == null) {
+				return false;
+			}
+			update(digest, String.valueOf(connection.getContentLengthLong()));
+			update(digest, lastModified);
+			update(digest, etag);
+			return true;
+		} catch (IOException e) {
+			log.warn("HEAD request to {} failed", url, e);
+			return false;
+		} finally {
+			if (connection != null) {
+				connection.disconnect();
+			}
+		}
+	}
+
+	private static void update(MessageDigest digest, @Nullable String value) {
+		digest.update(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) 0);
+	}
+}
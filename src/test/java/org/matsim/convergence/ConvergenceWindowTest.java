@@ -0,0 +1,68 @@
+package org.matsim.convergence;
+
+import it.unimi.dsi.fastutil.objects.Object2DoubleMap;
+import it.unimi.dsi.fastutil.objects.Object2DoubleOpenHashMap;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+class ConvergenceWindowTest {
+
+	@Test
+	void rangesOfLastIterations() {
+		ConvergenceWindow window = new ConvergenceWindow(3);
+		window.add(50, 0.9, shares(Map.of("car", 0.5, "walk", 0.5)));
+		window.add(100, 0.2, shares(Map.of("car", 0.6, "walk", 0.4)));
+		Assertions.assertFalse(window.isFull());
+
+		window.add(102, 0.25, shares(Map.of("car", 0.6, "walk", 0.38, "bike", 0.02)));
+		window.add(101, 0.21, shares(Map.of("car", 0.61, "walk", 0.39)));
+		Assertions.assertTrue(window.isFull());
+
+		// the first iteration has left the window
+		Assertions.assertEquals(2. / 101, window.getRelativeScoreRange(), 1e-9);
+		Assertions.assertEquals(0.25, window.getMaxChangedPlansShare(), 1e-9);
+		// bike is missing in two iterations, i.e. has a share of 0 there
+		Assertions.assertEquals(0.02, window.getModeShareRange(), 1e-9);
+	}
+
+	@Test
+	void converged() {
+		ConvergenceConfigGroup config = new ConvergenceConfigGroup();
+		config.setMaxChangedPlansShare(0.3);
+
+		ConvergenceWindow window = new ConvergenceWindow(3);
+		window.add(100, 0.25, shares(Map.of("car", 0.6, "walk", 0.4)));
+		window.add(100.1, 0.22, shares(Map.of("car", 0.6, "walk", 0.4)));
+		Assertions.assertFalse(window.isConverged(config));
+
+		window.add(100.1, 0.24, shares(Map.of("car", 0.601, "walk", 0.399)));
+		Assertions.assertTrue(window.isConverged(config));
+	}
+
+	@Test
+	void highChangedPlansShareDoesNotConverge() {
+		ConvergenceConfigGroup config = new ConvergenceConfigGroup();
+		config.setMaxChangedPlansShare(0.3);
+
+		// score and mode share are stable and the share of changed plans is flat, but far too high
+		ConvergenceWindow window = new ConvergenceWindow(3);
+		for (int i = 0; i < 5; i++) {
+			window.add(100, 0.8, shares(Map.of("car", 0.6, "walk", 0.4)));
+		}
+		Assertions.assertTrue(window.isFull());
+		Assertions.assertFalse(window.isConverged(config));
+
+		// a single iteration above the maximum is enough
+		window.add(100, 0.2, shares(Map.of("car", 0.6, "walk", 0.4)));
+		window.add(100, 0.2, shares(Map.of("car", 0.6, "walk", 0.4)));
+		Assertions.assertFalse(window.isConverged(config));
+		window.add(100, 0.2, shares(Map.of("car", 0.6, "walk", 0.4)));
+		Assertions.assertTrue(window.isConverged(config));
+	}
+
+	private static Object2DoubleMap<String> shares(Map<String, Double> shares) {
+		return new Object2DoubleOpenHashMap<>(shares);
+	}
+}
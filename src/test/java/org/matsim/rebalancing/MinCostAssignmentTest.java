@@ -0,0 +1,84 @@
+package org.matsim.rebalancing;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+class MinCostAssignmentTest {
+
+	@Test
+	void optimalAssignmentMatchesBruteForce() {
+		SplittableRandom rnd = new SplittableRandom(4711);
+		MinCostAssignment assignment = new MinCostAssignment();
+		for (int instance = 0; instance < 500; instance++) {
+			int rows = rnd.nextInt(1, 7);
+			int columns = rnd.nextInt(1, 5);
+			double[] costs = new double[rows * columns];
+			for (int i = 0; i < costs.length; i++) {
+				costs[i] = rnd.nextInt(100);
+			}
+			int[] capacities = new int[columns];
+			int totalCapacity = 0;
+			for (int column = 0; column < columns; column++) {
+				capacities[column] = rnd.nextInt(0, 4);
+				totalCapacity += capacities[column];
+			}
+
+			int[] rowColumns = assignment.solve(costs, rows, columns, capacities);
+
+			int[] counts = new int[columns];
+			int assignedRows = 0;
+			double totalCost = 0;
+			for (int row = 0; row < rows; row++) {
+				int column = rowColumns[row];
+				if (column != MinCostAssignment.UNASSIGNED) {
+					counts[column]++;
+					Assertions.assertTrue(counts[column] <= capacities[column], "capacity exceeded");
+					assignedRows++;
+					totalCost += costs[row * columns + column];
+				}
+			}
+			int toAssign = Math.min(rows, totalCapacity);
+			Assertions.assertEquals(toAssign, assignedRows);
+			Assertions.assertEquals(bruteForce(costs, rows, columns, 0, capacities.clone(), toAssign), totalCost, 1e-9);
+		}
+	}
+
+	@Test
+	void capacitatedColumns() {
+		// both rows prefer column 0, which takes both of them
+		double[] costs = {1, 5, 2, 3};
+		Assertions.assertArrayEquals(new int[]{0, 0}, new MinCostAssignment().solve(costs, 2, 2, new int[]{2, 2}));
+		// with a capacity of 1, the row with the higher cost for column 1 keeps column 0
+		Assertions.assertArrayEquals(new int[]{0, 1}, new MinCostAssignment().solve(costs, 2, 2, new int[]{1, 2}));
+	}
+
+	@Test
+	void emptyProblem() {
+		Assertions.assertEquals(0, new MinCostAssignment().solve(new double[0], 0, 5, new int[5]).length);
+		Assertions.assertEquals(MinCostAssignment.UNASSIGNED, new MinCostAssignment().solve(new double[0], 1, 0, new int[0])[0]);
+	}
+
+	/**
+	 * Minimal cost of assigning the remaining rows, where rows may only be skipped if the capacities do not suffice for all of them.
+	 */
+	private static double bruteForce(double[] costs, int rows, int columns, int row, int[] capacities, int toAssign) {
+		if (toAssign == 0) {
+			return 0;
+		}
+		if (rows - row < toAssign) {
+			return Double.POSITIVE_INFINITY;
+		}
+		// skip this row
+		double best = bruteForce(costs, rows, columns, row + 1, capacities, toAssign);
+		for (int column = 0; column < columns; column++) {
+			if (capacities[column] > 0) {
+				capacities[column]--;
+				best = Math.min(best, costs[row * columns + column] + bruteForce(costs, rows, columns, row + 1, capacities, toAssign - 1));
+				capacities[column]++;
+			}
+		}
+		return best;
+	}
+}
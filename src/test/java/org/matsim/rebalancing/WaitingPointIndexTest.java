@@ -0,0 +1,85 @@
+package org.matsim.rebalancing;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.utils.geometry.CoordUtils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+class WaitingPointIndexTest {
+
+	@Test
+	void nearestAvailableMatchesLinearScan() {
+		SplittableRandom rnd = new SplittableRandom(4711);
+		Network network = NetworkUtils.createNetwork();
+		Map<Id<Link>, Integer> capacities = new LinkedHashMap<>();
+		for (int i = 0; i < 200; i++) {
+			Node from = NetworkUtils.createAndAddNode(network, Id.createNodeId("from_" + i), new Coord(rnd.nextDouble(10000), rnd.nextDouble(10000)));
+			Node to = NetworkUtils.createAndAddNode(network, Id.createNodeId("to_" + i), new Coord(rnd.nextDouble(10000), rnd.nextDouble(10000)));
+			Link link = NetworkUtils.createAndAddLink(network, Id.createLinkId("wp_" + i), from, to, 100, 10, 1000, 1);
+			capacities.put(link.getId(), rnd.nextInt(1, 4));
+		}
+
+		WaitingPointIndex index = new WaitingPointIndex(network, capacities);
+		for (int query = 0; query < 1000; query++) {
+			Coord coord = new Coord(rnd.nextDouble(10000), rnd.nextDouble(10000));
+			int expected = findNearestAvailableByScan(index, coord);
+			int actual = index.findNearestAvailable(coord);
+			if (expected == WaitingPointIndex.NONE) {
+				Assertions.assertEquals(WaitingPointIndex.NONE, actual);
+				break;
+			}
+			Assertions.assertEquals(distance(index, expected, coord), distance(index, actual, coord), 1e-9);
+			index.increment(actual);
+			if (rnd.nextInt(4) == 0) {
+				int point = rnd.nextInt(index.size());
+				if (index.getOccupancy(point) > 0) {
+					index.decrement(point);
+				}
+			}
+		}
+	}
+
+	@Test
+	void noPointAvailableWhenAllFull() {
+		Network network = NetworkUtils.createNetwork();
+		Node a = NetworkUtils.createAndAddNode(network, Id.createNodeId("a"), new Coord(0, 0));
+		Node b = NetworkUtils.createAndAddNode(network, Id.createNodeId("b"), new Coord(100, 0));
+		Link link = NetworkUtils.createAndAddLink(network, Id.createLinkId("ab"), a, b, 100, 10, 1000, 1);
+
+		WaitingPointIndex index = new WaitingPointIndex(network, Map.of(link.getId(), 1));
+		int point = index.getPoint(link.getId());
+		Assertions.assertEquals(point, index.findNearestAvailable(new Coord(50, 50)));
+
+		index.increment(point);
+		Assertions.assertEquals(WaitingPointIndex.NONE, index.findNearestAvailable(new Coord(50, 50)));
+
+		index.resetOccupancies();
+		Assertions.assertEquals(point, index.findNearestAvailable(new Coord(50, 50)));
+	}
+
+	private static int findNearestAvailableByScan(WaitingPointIndex index, Coord coord) {
+		int nearest = WaitingPointIndex.NONE;
+		double shortestDistance = Double.POSITIVE_INFINITY;
+		for (int point = 0; point < index.size(); point++) {
+			double distance = distance(index, point, coord);
+			if (index.hasSpareCapacity(point) && distance < shortestDistance) {
+				nearest = point;
+				shortestDistance = distance;
+			}
+		}
+		return nearest;
+	}
+
+	private static double distance(WaitingPointIndex index, int point, Coord coord) {
+		return CoordUtils.calcEuclideanDistance(index.getLink(point).getToNode().getCoord(), coord);
+	}
+}
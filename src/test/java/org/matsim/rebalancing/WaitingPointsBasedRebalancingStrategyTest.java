@@ -0,0 +1,83 @@
+package org.matsim.rebalancing;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.contrib.drt.optimizer.rebalancing.RebalancingParams;
+import org.matsim.contrib.drt.optimizer.rebalancing.RebalancingStrategy;
+import org.matsim.contrib.drt.schedule.DrtStayTask;
+import org.matsim.contrib.dvrp.fleet.DvrpVehicle;
+import org.matsim.contrib.dvrp.fleet.DvrpVehicleImpl;
+import org.matsim.contrib.dvrp.fleet.ImmutableDvrpVehicleSpecification;
+import org.matsim.contrib.dvrp.schedule.Schedule;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.trafficmonitoring.FreeSpeedTravelTime;
+
+import java.io.IOException;
+import java.util.List;
+
+class WaitingPointsBasedRebalancingStrategyTest {
+
+	private static final double SERVICE_END_TIME = 30 * 3600;
+	private static final double TIME = 8 * 3600;
+
+	/**
+	 * A request is inserted into the schedule of a vehicle at a waiting point, but the events of the insertion are not processed yet. The
+	 * waiting point is free nevertheless when the next idle vehicle is relocated.
+	 */
+	@Test
+	void insertionWithoutEvents() throws IOException {
+		Network network = NetworkUtils.createNetwork();
+		Node n0 = NetworkUtils.createAndAddNode(network, Id.createNodeId("0"), new Coord(0, 0));
+		Node n1 = NetworkUtils.createAndAddNode(network, Id.createNodeId("1"), new Coord(100, 0));
+		Node n2 = NetworkUtils.createAndAddNode(network, Id.createNodeId("2"), new Coord(5000, 0));
+		Node n3 = NetworkUtils.createAndAddNode(network, Id.createNodeId("3"), new Coord(5100, 0));
+		Link waitingPoint1 = NetworkUtils.createAndAddLink(network, Id.createLinkId("01"), n0, n1, 100, 13.9, 1000, 1);
+		Link back = NetworkUtils.createAndAddLink(network, Id.createLinkId("10"), n1, n0, 100, 13.9, 1000, 1);
+		NetworkUtils.createAndAddLink(network, Id.createLinkId("12"), n1, n2, 4900, 13.9, 1000, 1);
+		NetworkUtils.createAndAddLink(network, Id.createLinkId("21"), n2, n1, 4900, 13.9, 1000, 1);
+		Link waitingPoint2 = NetworkUtils.createAndAddLink(network, Id.createLinkId("23"), n2, n3, 100, 13.9, 1000, 1);
+		Link far = NetworkUtils.createAndAddLink(network, Id.createLinkId("32"), n3, n2, 100, 13.9, 1000, 1);
+
+		// the waiting points are the start links, each with a capacity of 1
+		DvrpVehicle a = createIdleVehicle("a", waitingPoint1, waitingPoint1);
+		DvrpVehicle b = createIdleVehicle("b", waitingPoint2, back);
+		ImmutableMap<Id<DvrpVehicle>, DvrpVehicle> vehicles = ImmutableMap.of(a.getId(), a, b.getId(), b);
+
+		WaitingPointsBasedRebalancingStrategy strategy = new WaitingPointsBasedRebalancingStrategy("av", network,
+			new WaitingPointBasedRebalancingStrategyParams(), new RebalancingParams(), () -> vehicles, new FreeSpeedTravelTime(), null,
+			new WaitingPointRebalancingMetrics("av", null));
+
+		// a stays at its waiting point
+		Assertions.assertTrue(strategy.calcRelocations(List.of(a).stream(), TIME).isEmpty());
+
+		// a request is inserted into the schedule of a, a is not idle anymore
+		Schedule schedule = a.getSchedule();
+		schedule.getCurrentTask().setEndTime(TIME);
+		schedule.addTask(new DrtStayTask(TIME, TIME + 600, far));
+		schedule.addTask(new DrtStayTask(TIME + 600, SERVICE_END_TIME, far));
+
+		// b goes to the waiting point of a, which is nearer
+		List<RebalancingStrategy.Relocation> relocations = strategy.calcRelocations(List.of(b).stream(), TIME);
+		Assertions.assertEquals(1, relocations.size());
+		Assertions.assertEquals(waitingPoint1, relocations.get(0).link());
+	}
+
+	private static DvrpVehicle createIdleVehicle(String id, Link startLink, Link currentLink) {
+		DvrpVehicle vehicle = new DvrpVehicleImpl(ImmutableDvrpVehicleSpecification.newBuilder()
+			.id(Id.create(id, DvrpVehicle.class))
+			.startLinkId(startLink.getId())
+			.capacity(4)
+			.serviceBeginTime(0)
+			.serviceEndTime(SERVICE_END_TIME)
+			.build(), startLink);
+		vehicle.getSchedule().addTask(new DrtStayTask(0, SERVICE_END_TIME, currentLink));
+		vehicle.getSchedule().nextTask();
+		return vehicle;
+	}
+}
@@ -0,0 +1,30 @@
+package org.matsim.run;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class DrtWaitTimeCollectorTest {
+
+	@Test
+	void meanAndPercentiles() {
+		DrtWaitTimeCollector collector = new DrtWaitTimeCollector("av");
+		Assertions.assertEquals(0., collector.getMean());
+		Assertions.assertEquals(0., collector.getPercentile(0.95));
+
+		for (int i = 1; i <= 100; i++) {
+			collector.add(i * 60 + 0.5);
+		}
+		// exceeds the initial size of the histogram
+		collector.add(10000);
+
+		Assertions.assertEquals(101L, collector.getRides());
+		Assertions.assertEquals((5050 * 60 + 50 + 10000) / 101., collector.getMean(), 1e-9);
+		Assertions.assertEquals(51 * 60., collector.getPercentile(0.5));
+		Assertions.assertEquals(96 * 60., collector.getPercentile(0.95));
+		Assertions.assertEquals(10000., collector.getPercentile(1));
+
+		collector.reset(1);
+		Assertions.assertEquals(0L, collector.getRides());
+		Assertions.assertEquals(0., collector.getPercentile(0.5));
+	}
+}
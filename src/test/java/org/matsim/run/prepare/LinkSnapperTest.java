@@ -0,0 +1,73 @@
+package org.matsim.run.prepare;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.utils.geometry.CoordUtils;
+
+import java.util.Set;
+import java.util.SplittableRandom;
+
+class LinkSnapperTest {
+
+	@Test
+	void nearestLinkMatchesLinearScan() {
+		SplittableRandom rnd = new SplittableRandom(4711);
+		Network network = createRandomNetwork(rnd);
+
+		LinkSnapper linkSnapper = new LinkSnapper(network);
+		Assertions.assertEquals(network.getLinks().size(), linkSnapper.size());
+
+		Coord[] coords = new Coord[1000];
+		for (int i = 0; i < coords.length; i++) {
+			coords[i] = new Coord(rnd.nextDouble(-1000, 11000), rnd.nextDouble(-1000, 11000));
+		}
+
+		Link[] links = linkSnapper.snap(coords);
+		for (int i = 0; i < coords.length; i++) {
+			Link expected = NetworkUtils.getNearestLinkExactly(network, coords[i]);
+			Assertions.assertEquals(distance(expected, coords[i]), distance(links[i], coords[i]), 1e-9);
+			Assertions.assertSame(links[i], linkSnapper.snap(coords[i]));
+		}
+	}
+
+	@Test
+	void onlyLinksOfTheModesAreIndexed() {
+		Network network = NetworkUtils.createNetwork();
+		Node a = NetworkUtils.createAndAddNode(network, Id.createNodeId("a"), new Coord(0, 0));
+		Node b = NetworkUtils.createAndAddNode(network, Id.createNodeId("b"), new Coord(100, 0));
+		Node c = NetworkUtils.createAndAddNode(network, Id.createNodeId("c"), new Coord(0, 1000));
+		Node d = NetworkUtils.createAndAddNode(network, Id.createNodeId("d"), new Coord(100, 1000));
+		Link walk = NetworkUtils.createAndAddLink(network, Id.createLinkId("ab"), a, b, 100, 10, 1000, 1);
+		walk.setAllowedModes(Set.of(TransportMode.walk));
+		Link car = NetworkUtils.createAndAddLink(network, Id.createLinkId("cd"), c, d, 100, 10, 1000, 1);
+		car.setAllowedModes(Set.of(TransportMode.car, "av"));
+
+		Coord coord = new Coord(50, 10);
+		Assertions.assertSame(walk, new LinkSnapper(network).snap(coord));
+		Assertions.assertSame(car, new LinkSnapper(network, Set.of("av")).snap(coord));
+		Assertions.assertNull(new LinkSnapper(network, Set.of(TransportMode.bike)).snap(coord));
+	}
+
+	private static Network createRandomNetwork(SplittableRandom rnd) {
+		Network network = NetworkUtils.createNetwork();
+		for (int i = 0; i < 500; i++) {
+			Coord fromCoord = new Coord(rnd.nextDouble(10000), rnd.nextDouble(10000));
+			Coord toCoord = new Coord(fromCoord.getX() + rnd.nextDouble(-500, 500), fromCoord.getY() + rnd.nextDouble(-500, 500));
+			Node from = NetworkUtils.createAndAddNode(network, Id.createNodeId("from_" + i), fromCoord);
+			Node to = NetworkUtils.createAndAddNode(network, Id.createNodeId("to_" + i), toCoord);
+			NetworkUtils.createAndAddLink(network, Id.createLinkId("link_" + i), from, to, 100, 10, 1000, 1);
+		}
+		return network;
+	}
+
+	private static double distance(Link link, Coord coord) {
+		return CoordUtils.distancePointLinesegment(link.getFromNode().getCoord(), link.getToNode().getCoord(), coord);
+	}
+}
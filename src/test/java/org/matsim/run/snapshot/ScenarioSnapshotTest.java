@@ -0,0 +1,263 @@
+package org.matsim.run.snapshot;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.api.core.v01.population.PopulationFactory;
+import org.matsim.api.core.v01.population.Route;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.population.routes.NetworkRoute;
+import org.matsim.core.population.routes.RouteUtils;
+import org.matsim.core.router.TripStructureUtils;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.vehicles.Vehicle;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+class ScenarioSnapshotTest {
+
+	@Test
+	void roundTrip() throws IOException {
+		Scenario scenario = createScenario();
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			new ScenarioSnapshotWriter(out).write(scenario);
+		}
+		Scenario copy = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+		new ScenarioSnapshotReader(ByteBuffer.wrap(bytes.toByteArray())).read(copy);
+
+		assertNetwork(scenario.getNetwork(), copy.getNetwork());
+		assertPopulation(scenario.getPopulation(), copy.getPopulation());
+	}
+
+	@Test
+	void populationOnly() throws IOException {
+		Scenario scenario = createScenario();
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			new ScenarioSnapshotWriter(out).write(scenario);
+		}
+		Scenario copy = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+		new ScenarioSnapshotReader(ByteBuffer.wrap(bytes.toByteArray())).readPopulation(copy);
+
+		Assertions.assertTrue(copy.getNetwork().getLinks().isEmpty());
+		assertPopulation(scenario.getPopulation(), copy.getPopulation());
+	}
+
+	@Test
+	void unconvertibleAttribute() throws IOException {
+		Scenario scenario = createScenario();
+		scenario.getPopulation().getPersons().get(Id.createPersonId("person_1")).getAttributes().putAttribute("vehicles", new Object());
+
+		try (DataOutputStream out = new DataOutputStream(new ByteArrayOutputStream())) {
+			IllegalArgumentException e = Assertions.assertThrows(IllegalArgumentException.class, () -> new ScenarioSnapshotWriter(out).write(scenario));
+			Assertions.assertTrue(e.getMessage().contains("vehicles"), e.getMessage());
+		}
+	}
+
+	/**
+	 * Runs with a shared network (see RunKelheimSeeds) only read the population from the snapshot, which is still keyed by the input files.
+	 */
+	@Test
+	void sharedNetwork(@TempDir Path dir) throws IOException {
+		Scenario scenario = createScenario();
+		Path plans = dir.resolve("plans.xml");
+		NetworkUtils.writeNetwork(scenario.getNetwork(), dir.resolve("network.xml").toString());
+		PopulationUtils.writePopulation(scenario.getPopulation(), plans.toString());
+
+		Config config = ConfigUtils.createConfig();
+		config.setContext(dir.toUri().toURL());
+		config.network().setInputFile("network.xml");
+		config.plans().setInputFile("plans.xml");
+
+		Path snapshots = dir.resolve("snapshots");
+		Scenario first = ScenarioSnapshots.loadScenario(config, snapshots);
+		try (Stream<Path> files = Files.list(snapshots)) {
+			Assertions.assertEquals(1, files.count());
+		}
+
+		// the plans file can not be parsed anymore, but size and modification time, and thus the key, stay the same
+		long lastModified = Files.getLastModifiedTime(plans).toMillis();
+		Files.write(plans, new byte[(int) Files.size(plans)]);
+		Files.setLastModifiedTime(plans, FileTime.fromMillis(lastModified));
+
+		Scenario second = ScenarioSnapshots.loadScenario(config, snapshots, first.getNetwork());
+
+		Assertions.assertSame(first.getNetwork(), second.getNetwork());
+		Assertions.assertEquals("network.xml", config.network().getInputFile());
+		assertPopulation(first.getPopulation(), second.getPopulation());
+	}
+
+	static void assertPopulation(Population population, Population copy) {
+		Assertions.assertEquals(population.getPersons().keySet(), copy.getPersons().keySet());
+		for (Person person : population.getPersons().values()) {
+			Person copiedPerson = copy.getPersons().get(person.getId());
+			Assertions.assertEquals(person.getAttributes().getAsMap(), copiedPerson.getAttributes().getAsMap());
+			Assertions.assertEquals(person.getPlans().size(), copiedPerson.getPlans().size());
+			Assertions.assertEquals(person.getPlans().indexOf(person.getSelectedPlan()), copiedPerson.getPlans().indexOf(copiedPerson.getSelectedPlan()));
+			for (int i = 0; i < person.getPlans().size(); i++) {
+				assertPlan(person.getPlans().get(i), copiedPerson.getPlans().get(i));
+			}
+		}
+	}
+
+	private static void assertNetwork(Network network, Network copy) {
+		Assertions.assertEquals(network.getNodes().keySet(), copy.getNodes().keySet());
+		for (Node node : network.getNodes().values()) {
+			Node copiedNode = copy.getNodes().get(node.getId());
+			Assertions.assertEquals(node.getCoord(), copiedNode.getCoord());
+			Assertions.assertEquals(node.getAttributes().getAsMap(), copiedNode.getAttributes().getAsMap());
+		}
+
+		Assertions.assertEquals(network.getLinks().keySet(), copy.getLinks().keySet());
+		for (Link link : network.getLinks().values()) {
+			Link copiedLink = copy.getLinks().get(link.getId());
+			Assertions.assertEquals(link.getFromNode().getId(), copiedLink.getFromNode().getId());
+			Assertions.assertEquals(link.getToNode().getId(), copiedLink.getToNode().getId());
+			Assertions.assertEquals(link.getLength(), copiedLink.getLength());
+			Assertions.assertEquals(link.getFreespeed(), copiedLink.getFreespeed());
+			Assertions.assertEquals(link.getCapacity(), copiedLink.getCapacity());
+			Assertions.assertEquals(link.getNumberOfLanes(), copiedLink.getNumberOfLanes());
+			Assertions.assertEquals(link.getAllowedModes(), copiedLink.getAllowedModes());
+			Assertions.assertEquals(link.getAttributes().getAsMap(), copiedLink.getAttributes().getAsMap());
+		}
+	}
+
+	private static void assertPlan(Plan plan, Plan copy) {
+		Assertions.assertEquals(plan.getScore(), copy.getScore());
+		Assertions.assertEquals(plan.getPlanElements().size(), copy.getPlanElements().size());
+		for (int i = 0; i < plan.getPlanElements().size(); i++) {
+			PlanElement element = plan.getPlanElements().get(i);
+			PlanElement copiedElement = copy.getPlanElements().get(i);
+			Assertions.assertEquals(element.getClass(), copiedElement.getClass());
+			if (element instanceof Activity activity) {
+				assertActivity(activity, (Activity) copiedElement);
+			} else {
+				assertLeg((Leg) element, (Leg) copiedElement);
+			}
+		}
+	}
+
+	private static void assertActivity(Activity activity, Activity copy) {
+		Assertions.assertEquals(activity.getType(), copy.getType());
+		Assertions.assertEquals(activity.getCoord(), copy.getCoord());
+		Assertions.assertEquals(activity.getLinkId(), copy.getLinkId());
+		Assertions.assertEquals(activity.getFacilityId(), copy.getFacilityId());
+		Assertions.assertEquals(activity.getStartTime(), copy.getStartTime());
+		Assertions.assertEquals(activity.getEndTime(), copy.getEndTime());
+		Assertions.assertEquals(activity.getMaximumDuration(), copy.getMaximumDuration());
+		Assertions.assertEquals(activity.getAttributes().getAsMap(), copy.getAttributes().getAsMap());
+	}
+
+	private static void assertLeg(Leg leg, Leg copy) {
+		Assertions.assertEquals(leg.getMode(), copy.getMode());
+		Assertions.assertEquals(leg.getRoutingMode(), copy.getRoutingMode());
+		Assertions.assertEquals(leg.getDepartureTime(), copy.getDepartureTime());
+		Assertions.assertEquals(leg.getTravelTime(), copy.getTravelTime());
+
+		Route route = leg.getRoute();
+		Route copiedRoute = copy.getRoute();
+		Assertions.assertEquals(route.getClass(), copiedRoute.getClass());
+		Assertions.assertEquals(route.getRouteType(), copiedRoute.getRouteType());
+		Assertions.assertEquals(route.getRouteDescription(), copiedRoute.getRouteDescription());
+		Assertions.assertEquals(route.getStartLinkId(), copiedRoute.getStartLinkId());
+		Assertions.assertEquals(route.getEndLinkId(), copiedRoute.getEndLinkId());
+		Assertions.assertEquals(route.getTravelTime(), copiedRoute.getTravelTime());
+		Assertions.assertEquals(route.getDistance(), copiedRoute.getDistance());
+		if (route instanceof NetworkRoute networkRoute) {
+			Assertions.assertEquals(networkRoute.getLinkIds(), ((NetworkRoute) copiedRoute).getLinkIds());
+			Assertions.assertEquals(networkRoute.getVehicleId(), ((NetworkRoute) copiedRoute).getVehicleId());
+		}
+	}
+
+	static Scenario createScenario() {
+		Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+		Network network = scenario.getNetwork();
+		Node a = NetworkUtils.createAndAddNode(network, Id.createNodeId("a"), new Coord(0, 0));
+		Node b = NetworkUtils.createAndAddNode(network, Id.createNodeId("b"), new Coord(1000, 0));
+		Node c = NetworkUtils.createAndAddNode(network, Id.createNodeId("c"), new Coord(1000, 1000, 12.5));
+		c.getAttributes().putAttribute("type", "traffic_light");
+
+		Link ab = NetworkUtils.createAndAddLink(network, Id.createLinkId("ab"), a, b, 1000, 13.9, 1800, 2);
+		Link bc = NetworkUtils.createAndAddLink(network, Id.createLinkId("bc"), b, c, 1000, 8.3, 900, 1);
+		Link cb = NetworkUtils.createAndAddLink(network, Id.createLinkId("cb"), c, b, 1000, 8.3, 900, 1);
+		ab.setAllowedModes(Set.of(TransportMode.car, "freight"));
+		bc.setAllowedModes(Set.of(TransportMode.car, TransportMode.bike));
+		cb.setAllowedModes(Set.of(TransportMode.car, "freight"));
+		bc.getAttributes().putAttribute("allowed_speed", 8.33);
+
+		PopulationFactory pf = scenario.getPopulation().getFactory();
+		for (int i = 0; i < 3; i++) {
+			Person person = pf.createPerson(Id.createPersonId("person_" + i));
+			person.getAttributes().putAttribute("income", 1000. * i);
+			person.getAttributes().putAttribute("subpopulation", "person");
+
+			Plan car = pf.createPlan();
+			Activity home = pf.createActivityFromCoord("home_86400", new Coord(0, 10));
+			home.setLinkId(ab.getId());
+			home.setEndTime(8 * 3600 + i);
+			car.addActivity(home);
+			car.addActivity(pf.createInteractionActivityFromLinkId(TripStructureUtils.createStageActivityType(TransportMode.car), ab.getId()));
+			Leg carLeg = pf.createLeg(TransportMode.car);
+			carLeg.setRoutingMode(TransportMode.car);
+			carLeg.setDepartureTime(8 * 3600 + i);
+			carLeg.setTravelTime(300);
+			NetworkRoute route = RouteUtils.createLinkNetworkRouteImpl(ab.getId(), List.of(bc.getId()), cb.getId());
+			route.setTravelTime(300);
+			route.setDistance(2000);
+			route.setVehicleId(Id.create("person_" + i + "_car", Vehicle.class));
+			carLeg.setRoute(route);
+			car.addLeg(carLeg);
+			Activity work = pf.createActivityFromLinkId("work_28800", cb.getId());
+			work.setStartTime(8 * 3600 + 300);
+			work.setMaximumDuration(8 * 3600);
+			work.getAttributes().putAttribute("initialEndTime", 17 * 3600.);
+			car.addActivity(work);
+			car.setScore(120.5);
+
+			Plan walk = pf.createPlan();
+			walk.addActivity(pf.createActivityFromCoord("home_86400", new Coord(0, 10)));
+			Leg walkLeg = pf.createLeg(TransportMode.walk);
+			walkLeg.setRoutingMode(TransportMode.walk);
+			Route walkRoute = RouteUtils.createGenericRouteImpl(ab.getId(), cb.getId());
+			walkRoute.setTravelTime(1800);
+			walkRoute.setDistance(1500);
+			walkLeg.setRoute(walkRoute);
+			walk.addLeg(walkLeg);
+			walk.addActivity(pf.createActivityFromCoord("work_28800", new Coord(1000, 990)));
+
+			person.addPlan(walk);
+			person.addPlan(car);
+			person.setSelectedPlan(i % 2 == 0 ? car : walk);
+			scenario.getPopulation().addPerson(person);
+		}
+		return scenario;
+	}
+}